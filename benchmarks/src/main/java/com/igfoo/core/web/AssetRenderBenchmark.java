@@ -0,0 +1,100 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetRenderBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Manager {
+
+    @Param({"true", "false"})
+    public boolean caching;
+
+    @Param({"100"})
+    public int numFiles;
+
+    public File rootDir;
+    public ReloadableAssetManager manager;
+
+    @Setup(Level.Trial)
+    public void setup()
+      throws IOException {
+      rootDir = AssetTrees.createTree(numFiles);
+      manager = AssetTrees.createManager(rootDir, numFiles, caching);
+      manager.initialize();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      manager.shutdown();
+      AssetTrees.deleteTree(rootDir);
+    }
+  }
+
+  // each thread walks the configured paths on its own, so multi-threaded runs
+  // measure contention on shared state rather than on a single path
+  @State(Scope.Thread)
+  public static class Request {
+
+    public int index;
+
+    public String nextPath(int numFiles) {
+      index = (index + 1) % numFiles;
+      return AssetTrees.getPath(index);
+    }
+  }
+
+  @Benchmark
+  public List<String> scriptsForPath(Manager state, Request request) {
+    return state.manager.getScriptsForPath(request.nextPath(state.numFiles),
+      Locale.ENGLISH, true);
+  }
+
+  @Benchmark
+  public List<String> metaForPath(Manager state, Request request) {
+    return state.manager.getMetaForPath(request.nextPath(state.numFiles),
+      Locale.ENGLISH, true);
+  }
+
+  @Benchmark
+  public List<String> linksForPath(Manager state, Request request) {
+    return state.manager.getLinksForPath(request.nextPath(state.numFiles),
+      Locale.ENGLISH, true);
+  }
+
+  @Benchmark
+  public String titleForPath(Manager state, Request request) {
+    return state.manager.getTitleForPath(request.nextPath(state.numFiles),
+      Locale.ENGLISH, true);
+  }
+
+  @Benchmark
+  public List<String> scriptsForUnknownPath(Manager state) {
+    return state.manager.getScriptsForPath("/unknown.html", Locale.ENGLISH,
+      true);
+  }
+
+}
@@ -0,0 +1,127 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.context.support.StaticMessageSource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class AssetTrees {
+
+  // config files per directory, large trees are spread out like real apps
+  private static final int FILES_PER_DIR = 100;
+
+  public static String getPath(int index) {
+    return "/page/" + index + ".html";
+  }
+
+  public static String getName(int index) {
+    return "widget" + (index / 10);
+  }
+
+  public static File createTree(int numFiles)
+    throws IOException {
+
+    File rootDir = File.createTempFile("igfoo-assets", "");
+    rootDir.delete();
+    File assetsDir = new File(rootDir, "WEB-INF" + File.separator + "assets");
+    assetsDir.mkdirs();
+
+    FileUtils.writeStringToFile(new File(rootDir, "js" + File.separator
+      + "embed.js"), "var tracker = {id: 'UA-0000'};", "UTF-8");
+
+    StringBuilder global = new StringBuilder();
+    global.append("{\n");
+    global.append("  \"aliases\": {\n");
+    global.append("    \"jquery.js\": \"/js/vendor/jquery-1.4.4.min.js\",\n");
+    global.append("    \"core.css\": \"/css/core/core.css\"\n");
+    global.append("  },\n");
+    global.append("  \"title\": \"global.title\",\n");
+    global.append("  \"meta\": [{\"http-equiv\": \"Content-Type\", "
+      + "\"content\": \"text/html; charset=utf-8\"}],\n");
+    global.append("  \"scripts\": [\"${jquery.js}\", {\"id\": \"tracker\", "
+      + "\"type\": \"text/javascript\", \"embed\": \"/js/embed.js\"}],\n");
+    global.append("  \"links\": [\"${core.css}\"]\n");
+    global.append("}\n");
+    FileUtils.writeStringToFile(new File(assetsDir,
+      ReloadableAssetManager.GLOBAL_FILE), global.toString(), "UTF-8");
+
+    for (int i = 0; i < numFiles; i++) {
+      File dir = new File(assetsDir, "dir" + (i / FILES_PER_DIR));
+      StringBuilder config = new StringBuilder();
+      config.append("[\n");
+      config.append("  {\n");
+      config.append("    \"paths\": [\"" + getPath(i) + "\"],\n");
+      config.append("    \"title\": \"page." + i + ".title\",\n");
+      config.append("    \"meta\": [{\"name\": \"description\", "
+        + "\"content\": \"page." + i + ".description\"}],\n");
+      config.append("    \"scripts\": [\"${jquery.js}\", \"/js/page/" + i
+        + ".js\", {\"type\": \"text/javascript\", \"src\": \"/js/common.js\", "
+        + "\"defer\": \"defer\"}],\n");
+      config.append("    \"links\": [\"${core.css}\", \"/css/page/" + i
+        + ".css\", {\"rel\": \"canonical\", \"href\": \"" + getPath(i)
+        + "\"}]\n");
+      config.append("  }");
+      if (i % 10 == 0) {
+        config.append(",\n");
+        config.append("  {\n");
+        config.append("    \"name\": \"" + getName(i) + "\",\n");
+        config.append("    \"scripts\": [\"/js/widgets/" + i + ".js\"],\n");
+        config.append("    \"links\": [\"/css/widgets/" + i + ".css\"]\n");
+        config.append("  }");
+      }
+      config.append("\n]\n");
+      FileUtils.writeStringToFile(new File(dir, "page" + i + "-assets.json"),
+        config.toString(), "UTF-8");
+    }
+
+    return rootDir;
+  }
+
+  public static Resource[] getResources(File rootDir) {
+
+    // global file first like the resource pattern resolution
+    File assetsDir = new File(rootDir, "WEB-INF" + File.separator + "assets");
+    List<Resource> resources = new ArrayList<Resource>();
+    for (File file : FileUtils.listFiles(assetsDir, new String[] {"json"},
+      true)) {
+      resources.add(new FileSystemResource(file));
+    }
+    return resources.toArray(new Resource[resources.size()]);
+  }
+
+  public static StaticMessageSource createMessageSource(int numFiles) {
+    StaticMessageSource messageSource = new StaticMessageSource();
+    messageSource.setUseCodeAsDefaultMessage(true);
+    messageSource.addMessage("global.title", Locale.ENGLISH, "Igfoo");
+    for (int i = 0; i < numFiles; i++) {
+      messageSource.addMessage("page." + i + ".title", Locale.ENGLISH, "Page "
+        + i);
+    }
+    return messageSource;
+  }
+
+  public static ReloadableAssetManager createManager(File rootDir,
+    int numFiles, boolean caching) {
+
+    // no reloading, benchmarks measure loading and rendering only
+    ReloadableAssetManager manager = new ReloadableAssetManager();
+    manager.setRootDir(rootDir.getPath());
+    manager.setResources(getResources(rootDir));
+    manager.setMessageSource(createMessageSource(numFiles));
+    manager.setCaching(caching);
+    manager.setLocales(new Locale[] {Locale.ENGLISH});
+    manager.setReloadInterval(0);
+    return manager;
+  }
+
+  public static void deleteTree(File rootDir) {
+    FileUtils.deleteQuietly(rootDir);
+  }
+
+}
@@ -0,0 +1,159 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.jsp.JspException;
+import javax.servlet.jsp.JspWriter;
+
+import org.apache.commons.io.output.NullWriter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockJspWriter;
+import org.springframework.mock.web.MockPageContext;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AssetsTagBenchmark {
+
+  @State(Scope.Benchmark)
+  public static class Context {
+
+    @Param({"true", "false"})
+    public boolean caching;
+
+    @Param({"100"})
+    public int numFiles;
+
+    public File rootDir;
+    public ReloadableAssetManager manager;
+    public MockServletContext servletContext;
+    public StaticWebApplicationContext webContext;
+
+    @Setup(Level.Trial)
+    public void setup()
+      throws IOException {
+
+      rootDir = AssetTrees.createTree(numFiles);
+      manager = AssetTrees.createManager(rootDir, numFiles, caching);
+      manager.initialize();
+
+      // the tags look the manager up by name from the web context
+      servletContext = new MockServletContext();
+      webContext = new StaticWebApplicationContext();
+      webContext.setServletContext(servletContext);
+      webContext.getBeanFactory().registerSingleton("assetManager", manager);
+      webContext.refresh();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+      webContext.close();
+      manager.shutdown();
+      AssetTrees.deleteTree(rootDir);
+    }
+  }
+
+  // output goes nowhere so the writer doesn't grow across invocations
+  private static class NullPageContext
+    extends MockPageContext {
+
+    private final JspWriter out = new MockJspWriter(new NullWriter());
+
+    public NullPageContext(MockServletContext servletContext,
+      MockHttpServletRequest request) {
+      super(servletContext, request, new MockHttpServletResponse());
+    }
+
+    @Override
+    public JspWriter getOut() {
+      return out;
+    }
+  }
+
+  @State(Scope.Thread)
+  public static class Page {
+
+    @Param({"false", "true"})
+    public boolean dynamic;
+
+    public MockHttpServletRequest request;
+    public NullPageContext pageContext;
+    public AssetsTag headTag;
+    public AssetsTag scriptsTag;
+    public AssetsTag namesTag;
+    public int index;
+
+    @Setup(Level.Trial)
+    public void setup(Context context) {
+
+      request = new MockHttpServletRequest(context.servletContext);
+      request.addPreferredLocale(Locale.ENGLISH);
+      request.setAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE,
+        context.webContext);
+      if (dynamic) {
+        List<String> scripts = new ArrayList<String>();
+        scripts.add("/js/dynamic/one.js");
+        request.setAttribute(Assets.SCRIPTS, scripts);
+        List<String> links = new ArrayList<String>();
+        links.add("/css/dynamic/one.css");
+        request.setAttribute(Assets.LINKS, links);
+        request.setAttribute(Assets.TITLE, "page.0.title");
+      }
+      pageContext = new NullPageContext(context.servletContext, request);
+
+      // a head tag and a footer scripts tag, as on a typical page
+      headTag = new AssetsTag();
+      headTag.setTypes("title,meta,links");
+      headTag.setPageContext(pageContext);
+      scriptsTag = new AssetsTag();
+      scriptsTag.setTypes("scripts");
+      scriptsTag.setPageContext(pageContext);
+      namesTag = new AssetsTag();
+      namesTag.setNames(AssetTrees.getName(0) + "," + AssetTrees.getName(10));
+      namesTag.setPageContext(pageContext);
+    }
+
+    public void nextPath(int numFiles) {
+      index = (index + 1) % numFiles;
+      request.setAttribute(Assets.PATH, AssetTrees.getPath(index));
+    }
+  }
+
+  @Benchmark
+  public int renderPage(Context context, Page page)
+    throws JspException {
+    page.nextPath(context.numFiles);
+    return page.headTag.doStartTag() + page.scriptsTag.doStartTag();
+  }
+
+  @Benchmark
+  public int renderNamed(Page page)
+    throws JspException {
+    return page.namesTag.doStartTag();
+  }
+
+}
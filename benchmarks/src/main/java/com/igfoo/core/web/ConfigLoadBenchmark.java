@@ -0,0 +1,59 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ConfigLoadBenchmark {
+
+  @Param({"10", "100", "1000", "10000"})
+  public int numFiles;
+
+  @Param({"true", "false"})
+  public boolean caching;
+
+  private File rootDir;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException {
+    rootDir = AssetTrees.createTree(numFiles);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    AssetTrees.deleteTree(rootDir);
+  }
+
+  @Benchmark
+  public ReloadableAssetManager loadAllAssetConfigFiles() {
+
+    // initialize loads every config and, with caching, pre-renders fragments
+    ReloadableAssetManager manager = AssetTrees.createManager(rootDir,
+      numFiles, caching);
+    manager.initialize();
+    manager.shutdown();
+    return manager;
+  }
+
+}
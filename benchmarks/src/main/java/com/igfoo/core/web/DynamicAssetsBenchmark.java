@@ -0,0 +1,101 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DynamicAssetsBenchmark {
+
+  private File rootDir;
+  private ReloadableAssetManager manager;
+  private List scripts;
+  private List<Map<String, String>> metas;
+  private List links;
+
+  @Setup(Level.Trial)
+  public void setup()
+    throws IOException {
+
+    rootDir = AssetTrees.createTree(10);
+    manager = AssetTrees.createManager(rootDir, 10, true);
+    manager.initialize();
+
+    // the mix of shorthand and attribute maps a controller would add
+    scripts = new ArrayList();
+    scripts.add("/js/dynamic/one.js");
+    scripts.add("/js/dynamic/two.js");
+    Map<String, String> script = new LinkedHashMap<String, String>();
+    script.put("type", "text/javascript");
+    script.put("src", "/js/dynamic/three.js");
+    script.put("async", "async");
+    scripts.add(script);
+
+    metas = new ArrayList<Map<String, String>>();
+    Map<String, String> meta = new LinkedHashMap<String, String>();
+    meta.put("name", "description");
+    meta.put("content", "page.0.description");
+    metas.add(meta);
+    meta = new LinkedHashMap<String, String>();
+    meta.put("property", "og:title");
+    meta.put("content", "page.0.title");
+    metas.add(meta);
+
+    links = new ArrayList();
+    links.add("/css/dynamic/one.css");
+    Map<String, String> link = new LinkedHashMap<String, String>();
+    link.put("rel", "canonical");
+    link.put("href", "/page/0.html");
+    links.add(link);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    manager.shutdown();
+    AssetTrees.deleteTree(rootDir);
+  }
+
+  @Benchmark
+  public List<String> dynamicScripts() {
+    return manager.getDynamicScripts(scripts, Locale.ENGLISH);
+  }
+
+  @Benchmark
+  public List<String> dynamicMetas() {
+    return manager.getDynamicMetas(metas, Locale.ENGLISH);
+  }
+
+  @Benchmark
+  public List<String> dynamicLinks() {
+    return manager.getDynamicLinks(links, Locale.ENGLISH);
+  }
+
+  @Benchmark
+  public String dynamicTitle() {
+    return manager.getDynamicTitle("page.0.title", Locale.ENGLISH);
+  }
+
+}
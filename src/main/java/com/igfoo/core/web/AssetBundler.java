@@ -0,0 +1,285 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AssetBundler {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(AssetBundler.class);
+
+  public static final String DEFAULT_BUNDLE_DIR = "/bundles";
+
+  private static final Pattern CSS_URL = Pattern
+    .compile("url\\(\\s*(['\"]?)([^'\")]+)\\1\\s*\\)");
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final String rootDir;
+  private String bundleDir = DEFAULT_BUNDLE_DIR;
+  private boolean minify = true;
+
+  // raw sources are read through a store so changes are found like embeds,
+  // processed sources are kept until their raw source changes
+  private final EmbedSourceStore sources = new EmbedSourceStore();
+  private final Map<String, ProcessedSource> processed = new ConcurrentHashMap<String, ProcessedSource>();
+  private final Map<String, String> bundles = new ConcurrentHashMap<String, String>();
+  private Set<String> retired = new HashSet<String>();
+
+  private static class ProcessedSource {
+
+    private final String source;
+    private final String content;
+
+    public ProcessedSource(String source, String content) {
+      this.source = source;
+      this.content = content;
+    }
+  }
+
+  public AssetBundler(String rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  static String toHex(byte[] bytes) {
+    char[] hex = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      hex[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+      hex[i * 2 + 1] = HEX[bytes[i] & 0xf];
+    }
+    return new String(hex);
+  }
+
+  public static String getContentHash(String content) {
+
+    // md5 is only used to name content, not to secure it
+    try {
+      MessageDigest digest = MessageDigest.getInstance("MD5");
+      return toHex(digest.digest(content.getBytes("UTF-8")));
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    catch (UnsupportedEncodingException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  public static boolean isLocalUrl(String url) {
+    return StringUtils.startsWith(url, "/")
+      && !StringUtils.startsWith(url, "//");
+  }
+
+  static String rewriteCssUrls(String css, String url) {
+
+    // relative urls in a stylesheet are relative to the stylesheet, they are
+    // made absolute so they still work from the bundle directory or the page
+    Matcher matcher = CSS_URL.matcher(css);
+    StringBuffer rewritten = new StringBuffer(css.length());
+    while (matcher.find()) {
+      String ref = StringUtils.trim(matcher.group(2));
+      String replacement = matcher.group();
+      if (!ref.startsWith("/") && !ref.startsWith("#")
+        && !ref.startsWith("data:") && ref.indexOf("://") < 0) {
+        try {
+          replacement = "url(" + matcher.group(1)
+            + new URI(url).resolve(ref).toString() + matcher.group(1) + ")";
+        }
+        catch (URISyntaxException e) {
+          // leave anything that isn't a valid uri alone
+        }
+        catch (IllegalArgumentException e) {
+          // leave anything that isn't a valid uri alone
+        }
+      }
+      matcher.appendReplacement(rewritten, Matcher
+        .quoteReplacement(replacement));
+    }
+    matcher.appendTail(rewritten);
+    return rewritten.toString();
+  }
+
+  private String getContent(String type, String url) {
+
+    File file = getFile(url);
+    if (!file.isFile()) {
+      return null;
+    }
+
+    // only sources that changed since they were last bundled are processed
+    String key = type + ":" + file.getPath();
+    String source = sources.getSource(file);
+    ProcessedSource cached = processed.get(key);
+    if (cached != null && cached.source == source) {
+      return cached.content;
+    }
+    String content = source;
+    if (StringUtils.equals(type, AssetManager.LINKS)) {
+      content = rewriteCssUrls(content, url);
+      content = minify ? AssetMinifier.minifyCss(content) : content;
+    }
+    else if (minify) {
+      content = AssetMinifier.minifyJavaScript(content);
+    }
+    processed.put(key, new ProcessedSource(source, content));
+    return content;
+  }
+
+  public File getFile(String url) {
+
+    // urls are relative to the root of the web application, without any
+    // query string or fragment
+    String path = StringUtils.substringBefore(StringUtils.substringBefore(url,
+      "?"), "#");
+    return new File(rootDir + File.separator + path);
+  }
+
+  public String bundle(String type, List<String> urls) {
+
+    // the same urls are bundled once until one of their sources changes
+    String bundleKey = type + ":" + StringUtils.join(urls, ',');
+    String bundleUrl = bundles.get(bundleKey);
+    if (bundleUrl != null) {
+      return bundleUrl;
+    }
+
+    // scripts are separated so a missing semicolon can't join statements,
+    // a missing source leaves the urls unbundled
+    boolean isScripts = StringUtils.equals(type, AssetManager.SCRIPTS);
+    StringBuilder content = new StringBuilder();
+    for (String url : urls) {
+      String source = getContent(type, url);
+      if (source == null) {
+        LOG.warn("Unable to bundle missing source: " + url);
+        return null;
+      }
+      content.append(source);
+      content.append(isScripts ? ";\n" : "\n");
+    }
+
+    // bundles are named by their content so they can be cached forever and
+    // are written once, through a temp file of their own so they are never
+    // seen partly written, even when two threads make the same bundle
+    String bundled = content.toString();
+    String extension = isScripts ? ".js" : ".css";
+    String hash = getContentHash(bundled);
+    bundleUrl = StringUtils.removeEnd(bundleDir, "/") + "/" + hash + extension;
+    File bundleFile = getFile(bundleUrl);
+    if (!bundleFile.exists()) {
+      File tempFile = null;
+      try {
+        FileUtils.forceMkdir(bundleFile.getParentFile());
+        tempFile = File.createTempFile(hash, ".tmp", bundleFile
+          .getParentFile());
+        FileUtils.writeStringToFile(tempFile, bundled, "UTF-8");
+        if (!tempFile.renameTo(bundleFile)) {
+          FileUtils.deleteQuietly(tempFile);
+          if (!bundleFile.exists()) {
+            throw new IOException("Unable to rename " + tempFile.getPath());
+          }
+        }
+        LOG.info("Created bundle: " + bundleUrl + " from " + urls.size()
+          + " files");
+      }
+      catch (IOException e) {
+        LOG.error("Error writing bundle: " + bundleFile.getPath(), e);
+        FileUtils.deleteQuietly(tempFile);
+        return null;
+      }
+    }
+
+    // a bundle deleted as unused while this one was made is written again
+    // the next time the urls are bundled
+    synchronized (this) {
+      if (!bundleFile.exists()) {
+        return null;
+      }
+      bundles.put(bundleKey, bundleUrl);
+    }
+    return bundleUrl;
+  }
+
+  private synchronized void retireBundles() {
+
+    // bundles no longer made are deleted one reload later, so pages rendered
+    // before the reload can still load them for a while, and only bundles
+    // made since startup are ever deleted
+    Set<String> current = new HashSet<String>(bundles.values());
+    for (String bundleUrl : retired) {
+      if (!current.contains(bundleUrl)) {
+        File bundleFile = getFile(bundleUrl);
+        if (bundleFile.delete()) {
+          LOG.info("Deleted unused bundle: " + bundleUrl);
+        }
+      }
+    }
+    retired = current;
+    bundles.clear();
+  }
+
+  public boolean invalidate(String path) {
+
+    // bundles are made again from the sources that didn't change
+    if (sources.invalidate(path)) {
+      retireBundles();
+      return true;
+    }
+    return false;
+  }
+
+  public Set<String> checkModified() {
+    Set<String> modified = sources.checkModified();
+    if (!modified.isEmpty()) {
+      retireBundles();
+    }
+    return modified;
+  }
+
+  public boolean hasModified() {
+    return sources.hasModified();
+  }
+
+  public Set<String> getPaths() {
+    return sources.getPaths();
+  }
+
+  public Set<String> getBundlePaths() {
+    Set<String> bundlePaths = new LinkedHashSet<String>();
+    for (String bundleUrl : bundles.values()) {
+      bundlePaths.add(getFile(bundleUrl).getPath());
+    }
+    return bundlePaths;
+  }
+
+  public void clear() {
+    sources.clear();
+    processed.clear();
+    bundles.clear();
+  }
+
+  public void setBundleDir(String bundleDir) {
+    this.bundleDir = bundleDir;
+  }
+
+  public void setMinify(boolean minify) {
+    this.minify = minify;
+  }
+
+}
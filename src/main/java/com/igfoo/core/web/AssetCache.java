@@ -0,0 +1,284 @@
+package com.igfoo.core.web;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang.ObjectUtils;
+import org.apache.commons.lang.StringUtils;
+
+public class AssetCache {
+
+  public static final int DEFAULT_MAX_SIZE = 10000;
+
+  // number of independently locked segments, must be a power of two
+  private static final int NUM_SEGMENTS = 16;
+
+  private final int maxSize;
+  private final Segment[] segments;
+  private final AtomicLong hits;
+  private final AtomicLong misses;
+  private final AtomicLong evictions;
+
+  public static class Key {
+
+    private final String type;
+    private final String target;
+    private final Locale locale;
+    private final boolean global;
+    private final boolean named;
+    private final int hash;
+
+    public Key(String type, String target, Locale locale, boolean global,
+      boolean named) {
+      this.type = type;
+      this.target = target;
+      this.locale = locale;
+      this.global = global;
+      this.named = named;
+      int result = ObjectUtils.hashCode(type);
+      result = 31 * result + ObjectUtils.hashCode(target);
+      result = 31 * result + ObjectUtils.hashCode(locale);
+      result = 31 * result + (global ? 1 : 0);
+      result = 31 * result + (named ? 1 : 0);
+      this.hash = result;
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public String getTarget() {
+      return target;
+    }
+
+    public Locale getLocale() {
+      return locale;
+    }
+
+    public boolean isGlobal() {
+      return global;
+    }
+
+    public boolean isNamed() {
+      return named;
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      Key other = (Key)obj;
+      return hash == other.hash && global == other.global
+        && named == other.named && StringUtils.equals(type, other.type)
+        && StringUtils.equals(target, other.target)
+        && ObjectUtils.equals(locale, other.locale);
+    }
+
+    @Override
+    public String toString() {
+      return type + ":" + target + ":" + locale + ":" + global + ":" + named;
+    }
+  }
+
+  // a segment is a small access ordered map, evicting its least recently used
+  // entry once it grows past its share of the maximum size
+  private class Segment
+    extends LinkedHashMap<Key, AssetFragment> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    public Segment(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<Key, AssetFragment> eldest) {
+      if (size() > maxSize) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  public AssetCache() {
+    this(DEFAULT_MAX_SIZE);
+  }
+
+  public AssetCache(int maxSize) {
+    this(maxSize, new AtomicLong(), new AtomicLong(), new AtomicLong());
+  }
+
+  private AssetCache(int maxSize, AtomicLong hits, AtomicLong misses,
+    AtomicLong evictions) {
+    this.maxSize = maxSize;
+    this.hits = hits;
+    this.misses = misses;
+    this.evictions = evictions;
+    int segmentSize = Math.max(1, maxSize / NUM_SEGMENTS);
+    segments = new Segment[NUM_SEGMENTS];
+    for (int i = 0; i < NUM_SEGMENTS; i++) {
+      segments[i] = new Segment(segmentSize);
+    }
+  }
+
+  private Segment segmentFor(Key key) {
+    int hash = key.hashCode();
+    hash ^= (hash >>> 16);
+    return segments[hash & (NUM_SEGMENTS - 1)];
+  }
+
+  private static boolean isTarget(Key key, Set<String> targets) {
+
+    // merged names are joined by commas and depend on every name
+    String target = key.getTarget();
+    if (targets.contains(target)) {
+      return true;
+    }
+    if (key.isNamed() && StringUtils.contains(target, ',')) {
+      for (String name : StringUtils.split(target, ',')) {
+        if (targets.contains(name)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  public AssetFragment get(Key key) {
+    Segment segment = segmentFor(key);
+    AssetFragment value = null;
+    synchronized (segment) {
+      value = segment.get(key);
+    }
+    if (value != null) {
+      hits.incrementAndGet();
+    }
+    else {
+      misses.incrementAndGet();
+    }
+    return value;
+  }
+
+  public boolean containsKey(Key key) {
+
+    // a plain existence check, doesn't count as a hit or a miss
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      return segment.containsKey(key);
+    }
+  }
+
+  public void put(Key key, AssetFragment value) {
+    if (value == null) {
+      return;
+    }
+    Segment segment = segmentFor(key);
+    synchronized (segment) {
+      segment.put(key, value);
+    }
+  }
+
+  public void invalidate(String target) {
+
+    // remove every type, locale, and global variant for the path or name
+    Set<String> targets = Collections.singleton(target);
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        Iterator<Key> keyIt = segment.keySet().iterator();
+        while (keyIt.hasNext()) {
+          if (isTarget(keyIt.next(), targets)) {
+            keyIt.remove();
+          }
+        }
+      }
+    }
+  }
+
+  public AssetCache emptyCopy() {
+
+    // a new cache continuing this cache's statistics
+    return new AssetCache(maxSize, hits, misses, evictions);
+  }
+
+  public AssetCache copyExcept(Set<String> targets) {
+
+    // a new cache continuing this cache's statistics and holding every entry
+    // except those for the given paths or names
+    AssetCache copy = emptyCopy();
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        for (Map.Entry<Key, AssetFragment> entry : segment.entrySet()) {
+          if (!isTarget(entry.getKey(), targets)) {
+            copy.put(entry.getKey(), entry.getValue());
+          }
+        }
+      }
+    }
+    return copy;
+  }
+
+  public Map<Key, AssetFragment> getEntries() {
+
+    // a copy of every entry, iterating a segment doesn't reorder it
+    Map<Key, AssetFragment> entries = new LinkedHashMap<Key, AssetFragment>();
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        entries.putAll(segment);
+      }
+    }
+    return entries;
+  }
+
+  public void clear() {
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        segment.clear();
+      }
+    }
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+}
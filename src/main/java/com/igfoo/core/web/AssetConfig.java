@@ -0,0 +1,201 @@
+package com.igfoo.core.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+public class AssetConfig {
+
+  // the assets an asset must come after, by alias, id, url, or file name
+  public static final String AFTER = "after";
+
+  // true or false to add or leave out an asset from the preload header
+  public static final String PRELOAD = "preload";
+
+  // auto to write small local scripts and stylesheets into the page
+  public static final String INLINE = "inline";
+  public static final String INLINE_AUTO = "auto";
+
+  // how a script loads, set on a script or on an asset for all its scripts
+  public static final String LOAD = "load";
+  public static final String LOAD_BLOCKING = "blocking";
+  public static final String LOAD_ASYNC = "async";
+  public static final String LOAD_DEFER = "defer";
+  public static final String LOAD_MODULE = "module";
+  public static final String LOAD_FOOTER = "footer";
+
+  private final List<String> paths;
+  private final String name;
+  private final boolean global;
+  private final String title;
+  private final List<Map<String, String>> metas;
+  private final List<Map<String, String>> scripts;
+  private final List<Map<String, String>> links;
+  private final Set<String> aliasRefs = new HashSet<String>();
+
+  public AssetConfig(List<String> paths, String name, boolean global,
+    String title, List<Map<String, String>> metas,
+    List<Map<String, String>> scripts, List<Map<String, String>> links) {
+
+    this.paths = Collections.unmodifiableList(paths);
+    this.name = name;
+    this.global = global;
+    this.title = title;
+    this.metas = Collections.unmodifiableList(metas);
+    this.scripts = Collections.unmodifiableList(scripts);
+    this.links = Collections.unmodifiableList(links);
+
+    // remember every alias used so alias changes only touch dependent assets
+    addAliasRef(title);
+    addAliasRefs(metas);
+    addAliasRefs(scripts);
+    addAliasRefs(links);
+  }
+
+  public static boolean isAlias(String value) {
+    return StringUtils.isNotBlank(value) && StringUtils.startsWith(value, "${")
+      && StringUtils.endsWith(value, "}");
+  }
+
+  public static String getAliasKey(String value) {
+    String key = StringUtils.removeStart(value, "${");
+    return StringUtils.removeEnd(key, "}");
+  }
+
+  public static boolean isConfigAttr(String attr) {
+
+    // attributes that configure an asset and aren't written in its tag
+    return StringUtils.equals(attr, AFTER) || StringUtils.equals(attr, PRELOAD)
+      || StringUtils.equals(attr, INLINE) || StringUtils.equals(attr, LOAD);
+  }
+
+  private void addAliasRef(String value) {
+    if (isAlias(value)) {
+      aliasRefs.add(getAliasKey(value));
+    }
+  }
+
+  private void addAliasRefs(List<Map<String, String>> attrsList) {
+    for (Map<String, String> attrs : attrsList) {
+      for (Entry<String, String> keyVal : attrs.entrySet()) {
+        if (StringUtils.equals(keyVal.getKey(), AFTER)) {
+          for (String after : StringUtils.split(keyVal.getValue(), ',')) {
+            after = StringUtils.trim(after);
+            aliasRefs.add(isAlias(after) ? getAliasKey(after) : after);
+          }
+        }
+        else {
+          addAliasRef(keyVal.getValue());
+        }
+      }
+    }
+  }
+
+  private String replaceAlias(String value, Map<String, String> aliases) {
+    if (isAlias(value)) {
+      return aliases.get(getAliasKey(value));
+    }
+    return value;
+  }
+
+  private String replaceAfterAliases(String value,
+    Map<String, String> aliases) {
+
+    // assets can be after an alias with or without the ${} wrapper
+    List<String> afters = new ArrayList<String>();
+    for (String after : StringUtils.split(value, ',')) {
+      after = StringUtils.trim(after);
+      String aliased = aliases.get(isAlias(after) ? getAliasKey(after) : after);
+      afters.add(aliased != null ? aliased : after);
+    }
+    return StringUtils.join(afters, ',');
+  }
+
+  private List<Map<String, String>> replaceAliases(
+    List<Map<String, String>> attrsList, Map<String, String> aliases) {
+
+    List<Map<String, String>> replacedList = new ArrayList<Map<String, String>>();
+    for (Map<String, String> attrs : attrsList) {
+      Map<String, String> replaced = new LinkedHashMap<String, String>();
+      for (Entry<String, String> keyVal : attrs.entrySet()) {
+        if (StringUtils.equals(keyVal.getKey(), AFTER)) {
+          replaced.put(AFTER, replaceAfterAliases(keyVal.getValue(), aliases));
+        }
+        else {
+          replaced.put(keyVal.getKey(), replaceAlias(keyVal.getValue(),
+            aliases));
+        }
+      }
+      replacedList.add(replaced);
+    }
+    return replacedList;
+  }
+
+  public Map<String, Object> resolve(Map<String, String> aliases) {
+
+    // map to hold the configuration for the url or global
+    Map<String, Object> resolved = new LinkedHashMap<String, Object>();
+    if (StringUtils.isNotBlank(title)) {
+      resolved.put(AssetManager.TITLE, replaceAlias(title, aliases));
+    }
+    if (!metas.isEmpty()) {
+      resolved.put(AssetManager.METAS, replaceAliases(metas, aliases));
+    }
+    if (!scripts.isEmpty()) {
+      resolved.put(AssetManager.SCRIPTS, replaceAliases(scripts, aliases));
+    }
+    if (!links.isEmpty()) {
+      resolved.put(AssetManager.LINKS, replaceAliases(links, aliases));
+    }
+    return resolved;
+  }
+
+  public boolean references(Set<String> aliasKeys) {
+    for (String aliasRef : aliasRefs) {
+      if (aliasKeys.contains(aliasRef)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public List<String> getPaths() {
+    return paths;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public boolean isNamed() {
+    return StringUtils.isNotBlank(name);
+  }
+
+  public boolean isGlobal() {
+    return global;
+  }
+
+  public String getTitle() {
+    return title;
+  }
+
+  public List<Map<String, String>> getMetas() {
+    return metas;
+  }
+
+  public List<Map<String, String>> getScripts() {
+    return scripts;
+  }
+
+  public List<Map<String, String>> getLinks() {
+    return links;
+  }
+
+}
@@ -0,0 +1,38 @@
+package com.igfoo.core.web;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+public class AssetConfigFile {
+
+  private final String path;
+  private final boolean global;
+  private final Map<String, String> aliases;
+  private final List<AssetConfig> configs;
+
+  public AssetConfigFile(String path, boolean global,
+    Map<String, String> aliases, List<AssetConfig> configs) {
+    this.path = path;
+    this.global = global;
+    this.aliases = Collections.unmodifiableMap(aliases);
+    this.configs = Collections.unmodifiableList(configs);
+  }
+
+  public String getPath() {
+    return path;
+  }
+
+  public boolean isGlobal() {
+    return global;
+  }
+
+  public Map<String, String> getAliases() {
+    return aliases;
+  }
+
+  public List<AssetConfig> getConfigs() {
+    return configs;
+  }
+
+}
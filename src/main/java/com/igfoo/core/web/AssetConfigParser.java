@@ -0,0 +1,231 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang.StringUtils;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonParseException;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+
+public class AssetConfigParser {
+
+  private static final Map<String, String> SCRIPT_SHORTHAND = new LinkedHashMap<String, String>();
+  private static final Map<String, String> LINK_SHORTHAND = new LinkedHashMap<String, String>();
+  static {
+    SCRIPT_SHORTHAND.put("type", "text/javascript");
+    LINK_SHORTHAND.put("rel", "stylesheet");
+    LINK_SHORTHAND.put("type", "text/css");
+  }
+
+  // the factory is thread safe, parsers are created per file
+  private final JsonFactory jsonFactory = new JsonFactory();
+
+  private String parseText(JsonParser parser)
+    throws IOException {
+
+    // only scalar values have text, objects and arrays are skipped
+    JsonToken token = parser.getCurrentToken();
+    if (token.isScalarValue() && token != JsonToken.VALUE_NULL) {
+      return parser.getText();
+    }
+    parser.skipChildren();
+    return null;
+  }
+
+  private List<String> parseStringValues(JsonParser parser)
+    throws IOException {
+
+    // either a single string or an array of strings
+    List<String> strVals = new ArrayList<String>();
+    JsonToken token = parser.getCurrentToken();
+    if (token == JsonToken.VALUE_STRING) {
+      String val = parser.getText();
+      if (StringUtils.isNotBlank(val)) {
+        strVals.add(val);
+      }
+    }
+    else if (token == JsonToken.START_ARRAY) {
+      while (parser.nextToken() != JsonToken.END_ARRAY) {
+        if (parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+          String val = parser.getText();
+          if (StringUtils.isNotBlank(val)) {
+            strVals.add(val);
+          }
+        }
+        else {
+          parser.skipChildren();
+        }
+      }
+    }
+    else {
+      parser.skipChildren();
+    }
+    return strVals;
+  }
+
+  private Map<String, String> parseFieldValueMap(JsonParser parser)
+    throws IOException {
+
+    Map<String, String> attrMap = new LinkedHashMap<String, String>();
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return attrMap;
+    }
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String fieldname = parser.getCurrentName();
+      parser.nextToken();
+      String value = parseText(parser);
+      if (StringUtils.isNotBlank(value)) {
+        attrMap.put(fieldname, value);
+      }
+    }
+    return attrMap;
+  }
+
+  private List<Map<String, String>> parseAttributes(JsonParser parser,
+    Map<String, String> shorthandAttrs, String shorthandKey)
+    throws IOException {
+
+    List<Map<String, String>> attrsList = new ArrayList<Map<String, String>>();
+    if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+      parser.skipChildren();
+      return attrsList;
+    }
+    while (parser.nextToken() != JsonToken.END_ARRAY) {
+
+      // scripts and links can be shorthand of just the src or href
+      Map<String, String> fieldMap = null;
+      if (shorthandKey != null
+        && parser.getCurrentToken() == JsonToken.VALUE_STRING) {
+        fieldMap = new LinkedHashMap<String, String>(shorthandAttrs);
+        fieldMap.put(shorthandKey, parser.getText());
+      }
+      else {
+        fieldMap = parseFieldValueMap(parser);
+      }
+
+      if (fieldMap.size() > 0) {
+        attrsList.add(fieldMap);
+      }
+    }
+    return attrsList;
+  }
+
+  private AssetConfig parseAsset(JsonParser parser, boolean isGlobal,
+    Map<String, String> aliases)
+    throws IOException {
+
+    // anything other than an object can't be an asset
+    if (parser.getCurrentToken() != JsonToken.START_OBJECT) {
+      parser.skipChildren();
+      return null;
+    }
+
+    List<String> paths = new ArrayList<String>();
+    String title = null;
+    String name = null;
+    List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
+    List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
+    List<Map<String, String>> links = new ArrayList<Map<String, String>>();
+    String load = null;
+
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      String field = parser.getCurrentName();
+      parser.nextToken();
+      if (StringUtils.equals(field, "paths")) {
+        paths = parseStringValues(parser);
+      }
+      else if (StringUtils.equals(field, "title")) {
+        title = parseText(parser);
+      }
+      else if (StringUtils.equals(field, "name")) {
+        name = parseText(parser);
+      }
+      else if (StringUtils.equals(field, "meta")) {
+        metas = parseAttributes(parser, null, null);
+      }
+      else if (StringUtils.equals(field, AssetManager.SCRIPTS)) {
+        scripts = parseAttributes(parser, SCRIPT_SHORTHAND, "src");
+      }
+      else if (StringUtils.equals(field, AssetManager.LINKS)) {
+        links = parseAttributes(parser, LINK_SHORTHAND, "href");
+      }
+      else if (StringUtils.equals(field, AssetConfig.LOAD)) {
+        load = parseText(parser);
+      }
+      else if (aliases != null && StringUtils.equals(field, "aliases")) {
+        aliases.clear();
+        aliases.putAll(parseFieldValueMap(parser));
+      }
+      else {
+        parser.skipChildren();
+      }
+    }
+
+    // if no path and not global and not named then ignore
+    boolean isNamed = StringUtils.isNotBlank(name);
+    if (paths.isEmpty() && !isGlobal && !isNamed) {
+      return null;
+    }
+
+    // the asset's load is the default for its scripts without their own
+    if (StringUtils.isNotBlank(load)) {
+      for (Map<String, String> script : scripts) {
+        if (StringUtils.isBlank(script.get(AssetConfig.LOAD))) {
+          script.put(AssetConfig.LOAD, load);
+        }
+      }
+    }
+
+    return new AssetConfig(paths, name, isGlobal, title, metas, scripts,
+      links);
+  }
+
+  public AssetConfigFile parse(File assetConfigFile, boolean isGlobal)
+    throws IOException {
+
+    // stream the file straight into asset configs without building a tree
+    JsonParser parser = jsonFactory.createJsonParser(assetConfigFile);
+    try {
+
+      Map<String, String> aliases = new LinkedHashMap<String, String>();
+      List<AssetConfig> configs = new ArrayList<AssetConfig>();
+
+      // assets config files can hold one or more assets, only the global
+      // file holds aliases
+      JsonToken token = parser.nextToken();
+      if (token == JsonToken.START_ARRAY) {
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+          AssetConfig config = parseAsset(parser, false, null);
+          if (config != null) {
+            configs.add(config);
+          }
+        }
+      }
+      else if (token == JsonToken.START_OBJECT) {
+        AssetConfig config = parseAsset(parser, isGlobal, isGlobal ? aliases
+          : null);
+        if (config != null) {
+          configs.add(config);
+        }
+      }
+      else {
+        throw new JsonParseException("Expected an asset object or array",
+          parser.getCurrentLocation());
+      }
+
+      return new AssetConfigFile(assetConfigFile.getPath(), isGlobal,
+        aliases, configs);
+    }
+    finally {
+      parser.close();
+    }
+  }
+
+}
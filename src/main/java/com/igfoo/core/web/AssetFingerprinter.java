@@ -0,0 +1,176 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AssetFingerprinter {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(AssetFingerprinter.class);
+
+  // fingerprints go in the file name, /js/app.js is /js/app.<hash>.js, or in
+  // a query parameter, /js/app.js?v=<hash>
+  public static final String PATH = "path";
+  public static final String QUERY = "query";
+  public static final String VERSION_PARAM = "v";
+
+  public static final int HASH_LENGTH = 12;
+
+  private static final Pattern FINGERPRINTED_PATH = Pattern
+    .compile("^(.*/[^/]+)\\.([0-9a-f]{" + HASH_LENGTH + "})(\\.[^./]+)$");
+  private static final Pattern VERSION_QUERY = Pattern.compile("(?:^|&)"
+    + VERSION_PARAM + "=([0-9a-f]{" + HASH_LENGTH + "})(?:&|$)");
+
+  private final String rootDir;
+  private String style = PATH;
+  private final StampedFileCache<String> hashes = new StampedFileCache<String>();
+
+  public AssetFingerprinter(String rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  public static String[] parsePath(String path) {
+
+    // the original path and the fingerprint of a fingerprinted file name
+    Matcher matcher = FINGERPRINTED_PATH.matcher(StringUtils
+      .defaultString(path));
+    if (matcher.matches()) {
+      return new String[] {matcher.group(1) + matcher.group(3),
+        matcher.group(2)};
+    }
+    return null;
+  }
+
+  public static String parseQuery(String query) {
+
+    // the fingerprint of a fingerprinted query string
+    Matcher matcher = VERSION_QUERY.matcher(StringUtils.defaultString(query));
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  static String digestFile(File file)
+    throws IOException {
+    return AssetBundler.toHex(StampedFileCache.digest(file, "MD5")).substring(
+      0, HASH_LENGTH);
+  }
+
+  public File getFile(String path) {
+    return new File(rootDir + File.separator + path);
+  }
+
+  public String getHash(File file) {
+
+    // files are hashed once and then until they change
+    StampedFileCache.Entry<String> entry = hashes.get(file);
+    if (entry == null) {
+      long lastModified = file.lastModified();
+      long length = file.length();
+      String hash = null;
+      if (file.isFile()) {
+        try {
+          hash = digestFile(file);
+        }
+        catch (IOException e) {
+          LOG.error("Error fingerprinting file: " + file.getPath(), e);
+        }
+      }
+      entry = hashes.put(file, hash, lastModified, length);
+    }
+    return entry.getValue();
+  }
+
+  public String fingerprint(String url) {
+
+    // only local urls of files under the root directory are fingerprinted,
+    // anything else is left as configured
+    if (!AssetBundler.isLocalUrl(url)) {
+      return url;
+    }
+    int end = StringUtils.indexOfAny(url, "?#");
+    String path = (end < 0) ? url : url.substring(0, end);
+    String rest = (end < 0) ? "" : url.substring(end);
+    String hash = getHash(getFile(path));
+    if (hash == null) {
+      return url;
+    }
+
+    // names without an extension can only use the query string
+    String name = path.substring(path.lastIndexOf('/') + 1);
+    int dot = name.lastIndexOf('.');
+    if (StringUtils.equals(style, PATH) && dot > 0) {
+      int extension = path.length() - name.length() + dot;
+      return path.substring(0, extension) + "." + hash
+        + path.substring(extension) + rest;
+    }
+    String query = StringUtils.substringBefore(rest, "#");
+    String fragment = rest.substring(query.length());
+    return path + (query.length() > 0 ? query + "&" : "?") + VERSION_PARAM
+      + "=" + hash + fragment;
+  }
+
+  public boolean isCurrent(String path, String hash) {
+
+    // a stale fingerprint is one for content that has since changed, only
+    // files already fingerprinted are checked so requests can't grow the
+    // index
+    StampedFileCache.Entry<String> entry = hashes.get(getFile(path));
+    return entry != null && !entry.isModified()
+      && StringUtils.equals(entry.getValue(), hash);
+  }
+
+  public boolean invalidate(String path) {
+    return hashes.invalidate(path);
+  }
+
+  public Set<String> checkModified() {
+    return hashes.checkModified();
+  }
+
+  public boolean hasModified() {
+    return hashes.hasModified();
+  }
+
+  public Set<String> getPaths() {
+    return hashes.getPaths();
+  }
+
+  public Map<String, String> getHashes() {
+    Map<String, String> fileHashes = new LinkedHashMap<String, String>();
+    for (Entry<String, StampedFileCache.Entry<String>> entry : hashes
+      .getEntries().entrySet()) {
+      if (entry.getValue().getValue() != null) {
+        fileHashes.put(entry.getKey(), entry.getValue().getValue());
+      }
+    }
+    return fileHashes;
+  }
+
+  public void restoreHash(String path, String hash, long lastModified,
+    long length) {
+
+    // a hash saved by an earlier run, kept only if the file is unchanged
+    File file = new File(path);
+    if (file.lastModified() == lastModified && file.length() == length) {
+      hashes.put(file, hash, lastModified, length);
+    }
+  }
+
+  public void clear() {
+    hashes.clear();
+  }
+
+  public void setStyle(String style) {
+    this.style = style;
+  }
+
+}
@@ -0,0 +1,81 @@
+package com.igfoo.core.web;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class AssetFragment {
+
+  public static final AssetFragment EMPTY = new AssetFragment(
+    Collections.<String> emptyList());
+
+  private final List<String> tags;
+  private final List<List<String>> keys;
+  private final char[] content;
+
+  public AssetFragment(List<String> tags) {
+    this(tags, null);
+  }
+
+  public AssetFragment(List<String> tags, List<List<String>> keys) {
+
+    // keep our own copy of the tags so the fragment can't change underneath,
+    // keys identify the asset behind each tag so it is only written once
+    this.tags = Collections.unmodifiableList(new ArrayList<String>(tags));
+    this.keys = (keys != null) ? Collections
+      .unmodifiableList(new ArrayList<List<String>>(keys)) : null;
+
+    // pre-render every tag followed by a newline into a single char array
+    int length = 0;
+    for (String tag : tags) {
+      length += tag.length() + 1;
+    }
+    char[] chars = new char[length];
+    int offset = 0;
+    for (String tag : tags) {
+      tag.getChars(0, tag.length(), chars, offset);
+      offset += tag.length();
+      chars[offset++] = '\n';
+    }
+    this.content = chars;
+  }
+
+  public List<String> getTags() {
+    return tags;
+  }
+
+  public boolean hasKeys() {
+    return keys != null;
+  }
+
+  public List<String> getKeys(int index) {
+    return (keys != null) ? keys.get(index) : Collections.<String> emptyList();
+  }
+
+  public String getFirstTag() {
+    return tags.isEmpty() ? null : tags.get(0);
+  }
+
+  public boolean isEmpty() {
+    return tags.isEmpty();
+  }
+
+  public int length() {
+    return content.length;
+  }
+
+  public void writeTo(Writer out)
+    throws IOException {
+    if (content.length > 0) {
+      out.write(content, 0, content.length);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return new String(content);
+  }
+
+}
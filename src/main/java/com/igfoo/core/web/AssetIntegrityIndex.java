@@ -0,0 +1,302 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.codehaus.jackson.Base64Variants;
+import org.codehaus.jackson.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AssetIntegrityIndex {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(AssetIntegrityIndex.class);
+
+  // the index file under the root directory unless set
+  public static final String DEFAULT_INDEX_FILE = "/WEB-INF/asset-integrity.json";
+
+  public static final String ALGORITHM = "sha384";
+
+  private final String rootDir;
+  private File indexFile;
+  private final StampedFileCache<String> digests = new StampedFileCache<String>();
+  private volatile boolean changed = false;
+
+  // an entry of the index file, the digest of a file as of its modified
+  // time and length
+  public static class IndexEntry {
+
+    private String integrity;
+    private long lastModified;
+    private long length;
+
+    public String getIntegrity() {
+      return integrity;
+    }
+
+    public void setIntegrity(String integrity) {
+      this.integrity = integrity;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public void setLastModified(long lastModified) {
+      this.lastModified = lastModified;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public void setLength(long length) {
+      this.length = length;
+    }
+  }
+
+  public AssetIntegrityIndex(String rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  static String digestFile(File file)
+    throws IOException {
+    return ALGORITHM + "-"
+      + Base64Variants.MIME_NO_LINEFEEDS.encode(StampedFileCache.digest(file,
+        "SHA-384"));
+  }
+
+  public File getFile(String path) {
+    return new File(rootDir + File.separator + path);
+  }
+
+  public String getIntegrity(File file) {
+
+    // files are digested once and then until they change
+    StampedFileCache.Entry<String> entry = digests.get(file);
+    if (entry == null) {
+      long lastModified = file.lastModified();
+      long length = file.length();
+      String integrity = null;
+      if (file.isFile()) {
+        try {
+          integrity = digestFile(file);
+          changed = true;
+        }
+        catch (IOException e) {
+          LOG.error("Error digesting file: " + file.getPath(), e);
+        }
+      }
+      entry = digests.put(file, integrity, lastModified, length);
+    }
+    return entry.getValue();
+  }
+
+  public void digestAll(Collection<File> files, int numThreads) {
+
+    // files not already digested are hashed on a bounded pool, so a cold
+    // start doesn't hash every file one at a time while rendering
+    Map<String, File> pending = new LinkedHashMap<String, File>();
+    for (File file : files) {
+      if (digests.get(file) == null) {
+        pending.put(StampedFileCache.getKey(file), file);
+      }
+    }
+    if (pending.isEmpty()) {
+      return;
+    }
+    LOG.info("Digesting " + pending.size() + " files for integrity");
+    if (numThreads <= 1 || pending.size() <= 1) {
+      for (File file : pending.values()) {
+        getIntegrity(file);
+      }
+      return;
+    }
+
+    ExecutorService executor = Executors.newFixedThreadPool(Math.min(
+      numThreads, pending.size()), new ThreadFactory() {
+
+      private AtomicInteger count = new AtomicInteger();
+
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "asset-hasher-"
+          + count.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (final File file : pending.values()) {
+        futures.add(executor.submit(new Runnable() {
+
+          @Override
+          public void run() {
+            getIntegrity(file);
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          LOG.error("Error digesting files", e.getCause());
+        }
+      }
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    finally {
+      executor.shutdown();
+    }
+  }
+
+  private Map<String, IndexEntry> readIndex()
+    throws IOException {
+    InputStream input = new FileInputStream(indexFile);
+    try {
+      return JsonUtils.deserializeFrom(input,
+        new TypeReference<Map<String, IndexEntry>>() {});
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private void writeIndex(File file, Map<String, IndexEntry> index)
+    throws IOException {
+
+    // closed here, an unflushed index must not replace the old one
+    OutputStream output = new FileOutputStream(file);
+    try {
+      JsonUtils.serializeTo(output, index);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  public void load() {
+
+    // digests from the last run are used for files with the same modified
+    // time and length, anything else is digested again
+    if (indexFile == null || !indexFile.isFile()) {
+      return;
+    }
+    try {
+      Map<String, IndexEntry> index = readIndex();
+      int numLoaded = 0;
+      for (Entry<String, IndexEntry> entry : index.entrySet()) {
+        IndexEntry indexEntry = entry.getValue();
+        if (indexEntry == null || indexEntry.getIntegrity() == null) {
+          continue;
+        }
+        File file = new File(entry.getKey());
+        long lastModified = indexEntry.getLastModified();
+        long length = indexEntry.getLength();
+        if (file.isFile() && file.lastModified() == lastModified
+          && file.length() == length) {
+          digests.put(file, indexEntry.getIntegrity(), lastModified, length);
+          numLoaded++;
+        }
+      }
+      LOG.info("Loaded " + numLoaded + " integrity digests from: "
+        + indexFile.getPath());
+    }
+    catch (Exception e) {
+      LOG.warn("Unable to load integrity index: " + indexFile.getPath()
+        + ", digesting files again", e);
+    }
+  }
+
+  public synchronized void save() {
+
+    // only when digests changed, through a temp file so a crash never leaves
+    // a partly written index
+    if (indexFile == null || !changed) {
+      return;
+    }
+    changed = false;
+    Map<String, IndexEntry> index = new LinkedHashMap<String, IndexEntry>();
+    for (Entry<String, StampedFileCache.Entry<String>> entry : digests
+      .getEntries().entrySet()) {
+      StampedFileCache.Entry<String> digest = entry.getValue();
+      if (digest.getValue() != null) {
+        IndexEntry indexEntry = new IndexEntry();
+        indexEntry.setIntegrity(digest.getValue());
+        indexEntry.setLastModified(digest.getLastModified());
+        indexEntry.setLength(digest.getLength());
+        index.put(entry.getKey(), indexEntry);
+      }
+    }
+    File tempFile = new File(indexFile.getPath() + ".tmp");
+    try {
+      FileUtils.forceMkdir(indexFile.getAbsoluteFile().getParentFile());
+      writeIndex(tempFile, index);
+      AssetSnapshotFile.replaceFile(tempFile, indexFile);
+    }
+    catch (IOException e) {
+      LOG.error("Error writing integrity index: " + indexFile.getPath(), e);
+      FileUtils.deleteQuietly(tempFile);
+    }
+  }
+
+  public boolean invalidate(String path) {
+    if (digests.invalidate(path)) {
+      changed = true;
+      return true;
+    }
+    return false;
+  }
+
+  public Set<String> checkModified() {
+
+    Set<String> modified = digests.checkModified();
+    if (!modified.isEmpty()) {
+      changed = true;
+    }
+    return modified;
+  }
+
+  public boolean hasModified() {
+    return digests.hasModified();
+  }
+
+  public Set<String> getPaths() {
+    return digests.getPaths();
+  }
+
+  public void clear() {
+    digests.clear();
+    changed = true;
+  }
+
+  public void setIndexFile(File indexFile) {
+    this.indexFile = indexFile;
+  }
+
+}
@@ -6,6 +6,27 @@ import java.util.Map;
 
 public interface AssetManager {
 
+  // asset types
+  public static final String GLOBAL = "global";
+  public static final String SCRIPTS = "scripts";
+  public static final String METAS = "metas";
+  public static final String LINKS = "links";
+  public static final String TITLE = "title";
+
+  // scripts loaded in the footer, written by their own tag
+  public static final String FOOTER_SCRIPTS = "footer-scripts";
+
+  // pre-rendered assets by type
+
+  public AssetFragment getFragmentForPath(String type, String path,
+    Locale locale, boolean global);
+
+  public AssetFragment getFragmentForName(String type, String name,
+    Locale locale);
+
+  public AssetFragment getFragmentForNames(String type, String[] names,
+    Locale locale);
+
   // assets by path
 
   public List<String> getScriptsForPath(String path, Locale locale,
@@ -29,6 +50,9 @@ public interface AssetManager {
 
   // dynamic assets
 
+  public AssetFragment getDynamicFragment(String type, List assets,
+    Locale locale);
+
   public List<String> getDynamicScripts(List scripts, Locale locale);
 
   public List<String> getDynamicMetas(List<Map<String, String>> metas,
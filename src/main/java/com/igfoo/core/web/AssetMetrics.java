@@ -0,0 +1,453 @@
+package com.igfoo.core.web;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AssetMetrics
+  implements AssetMetricsMXBean {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(AssetMetrics.class);
+
+  public static final String DEFAULT_OBJECT_NAME = "com.igfoo.core.web:type=AssetMetrics";
+
+  private final List<AssetMetricsListener> listeners = new CopyOnWriteArrayList<AssetMetricsListener>();
+  private final ConcurrentMap<String, ConcurrentMap<String, LatencyHistogram>> latencies = new ConcurrentHashMap<String, ConcurrentMap<String, LatencyHistogram>>();
+  private final ConcurrentMap<String, AtomicLong> tagCounts = new ConcurrentHashMap<String, AtomicLong>();
+  private final ConcurrentMap<String, AtomicLong> parseFailures = new ConcurrentHashMap<String, AtomicLong>();
+  private volatile LatencyHistogram tagRenders = new LatencyHistogram();
+  private final AtomicLong reloads = new AtomicLong();
+  private final AtomicLong reloadedFiles = new AtomicLong();
+  private final AtomicLong lastReloadNanos = new AtomicLong();
+  private final AtomicLong totalReloadNanos = new AtomicLong();
+  private final AtomicLong embedReads = new AtomicLong();
+  private final AtomicLong embedBytes = new AtomicLong();
+  private volatile AssetCache tagCache;
+  private volatile PathTrie routes;
+  private ObjectName objectName;
+
+  // a histogram of four buckets per power of two, so percentiles are within
+  // a quarter of the true value without keeping every sample
+  private static class LatencyHistogram {
+
+    private static final int NUM_BUCKETS = 4 + (62 * 4);
+
+    private final AtomicLongArray buckets = new AtomicLongArray(NUM_BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    private static int getBucket(long value) {
+      if (value < 4) {
+        return (int)Math.max(value, 0);
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int sub = (int)((value >> (exponent - 2)) & 3);
+      return 4 + ((exponent - 2) * 4) + sub;
+    }
+
+    private static long getUpperBound(int bucket) {
+      if (bucket < 4) {
+        return bucket;
+      }
+      int exponent = ((bucket - 4) / 4) + 2;
+      int sub = (bucket - 4) % 4;
+      return ((4L + sub) << (exponent - 2)) + (1L << (exponent - 2)) - 1;
+    }
+
+    public void record(long value) {
+      buckets.incrementAndGet(getBucket(value));
+      count.incrementAndGet();
+      total.addAndGet(value);
+      long curMax = max.get();
+      while (value > curMax && !max.compareAndSet(curMax, value)) {
+        curMax = max.get();
+      }
+    }
+
+    private long getPercentile(long numValues, double percentile) {
+      long rank = (long)Math.ceil(numValues * percentile);
+      long seen = 0;
+      for (int i = 0; i < NUM_BUCKETS; i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          return Math.min(getUpperBound(i), max.get());
+        }
+      }
+      return max.get();
+    }
+
+    public LatencyStats getStats() {
+      long numValues = count.get();
+      if (numValues == 0) {
+        return new LatencyStats(0, 0, 0, 0, 0, 0);
+      }
+      return new LatencyStats(numValues, total.get() / numValues,
+        getPercentile(numValues, 0.5), getPercentile(numValues, 0.95),
+        getPercentile(numValues, 0.99), max.get());
+    }
+  }
+
+  public static class LatencyStats {
+
+    private final long count;
+    private final double meanMicros;
+    private final double p50Micros;
+    private final double p95Micros;
+    private final double p99Micros;
+    private final double maxMicros;
+
+    public LatencyStats(long count, long meanNanos, long p50Nanos,
+      long p95Nanos, long p99Nanos, long maxNanos) {
+      this.count = count;
+      this.meanMicros = meanNanos / 1000d;
+      this.p50Micros = p50Nanos / 1000d;
+      this.p95Micros = p95Nanos / 1000d;
+      this.p99Micros = p99Nanos / 1000d;
+      this.maxMicros = maxNanos / 1000d;
+    }
+
+    public long getCount() {
+      return count;
+    }
+
+    public double getMeanMicros() {
+      return meanMicros;
+    }
+
+    public double getP50Micros() {
+      return p50Micros;
+    }
+
+    public double getP95Micros() {
+      return p95Micros;
+    }
+
+    public double getP99Micros() {
+      return p99Micros;
+    }
+
+    public double getMaxMicros() {
+      return maxMicros;
+    }
+  }
+
+  public static class CacheStats {
+
+    private final int size;
+    private final int maxSize;
+    private final long hits;
+    private final long misses;
+    private final long evictions;
+
+    public CacheStats(int size, int maxSize, long hits, long misses,
+      long evictions) {
+      this.size = size;
+      this.maxSize = maxSize;
+      this.hits = hits;
+      this.misses = misses;
+      this.evictions = evictions;
+    }
+
+    public int getSize() {
+      return size;
+    }
+
+    public int getMaxSize() {
+      return maxSize;
+    }
+
+    public long getHits() {
+      return hits;
+    }
+
+    public long getMisses() {
+      return misses;
+    }
+
+    public long getEvictions() {
+      return evictions;
+    }
+
+    public double getHitRatio() {
+      long lookups = hits + misses;
+      return lookups > 0 ? (double)hits / lookups : 0;
+    }
+  }
+
+  private static void increment(ConcurrentMap<String, AtomicLong> counts,
+    String key, long delta) {
+    AtomicLong counter = counts.get(key);
+    if (counter == null) {
+      AtomicLong newCounter = new AtomicLong();
+      counter = counts.putIfAbsent(key, newCounter);
+      if (counter == null) {
+        counter = newCounter;
+      }
+    }
+    counter.addAndGet(delta);
+  }
+
+  private LatencyHistogram getHistogram(String method, String type) {
+
+    // methods and types are a small fixed set, looked up without building a
+    // key on every call
+    ConcurrentMap<String, LatencyHistogram> methodLatencies = latencies
+      .get(method);
+    if (methodLatencies == null) {
+      ConcurrentMap<String, LatencyHistogram> newLatencies = new ConcurrentHashMap<String, LatencyHistogram>();
+      methodLatencies = latencies.putIfAbsent(method, newLatencies);
+      if (methodLatencies == null) {
+        methodLatencies = newLatencies;
+      }
+    }
+    String typeKey = (type != null) ? type : "";
+    LatencyHistogram histogram = methodLatencies.get(typeKey);
+    if (histogram == null) {
+      LatencyHistogram newHistogram = new LatencyHistogram();
+      histogram = methodLatencies.putIfAbsent(typeKey, newHistogram);
+      if (histogram == null) {
+        histogram = newHistogram;
+      }
+    }
+    return histogram;
+  }
+
+  private void listenerFailed(RuntimeException e) {
+    LOG.warn("Error in asset metrics listener", e);
+  }
+
+  public void methodTimed(String method, String type, long nanos) {
+    getHistogram(method, type).record(nanos);
+    for (AssetMetricsListener listener : listeners) {
+      try {
+        listener.methodTimed(method, type, nanos);
+      }
+      catch (RuntimeException e) {
+        listenerFailed(e);
+      }
+    }
+  }
+
+  public void tagsServed(String target, int numTags) {
+    increment(tagCounts, target, numTags);
+    for (AssetMetricsListener listener : listeners) {
+      try {
+        listener.tagsServed(target, numTags);
+      }
+      catch (RuntimeException e) {
+        listenerFailed(e);
+      }
+    }
+  }
+
+  public void reloaded(int numFiles, long nanos) {
+    reloads.incrementAndGet();
+    reloadedFiles.addAndGet(numFiles);
+    lastReloadNanos.set(nanos);
+    totalReloadNanos.addAndGet(nanos);
+    for (AssetMetricsListener listener : listeners) {
+      try {
+        listener.reloaded(numFiles, nanos);
+      }
+      catch (RuntimeException e) {
+        listenerFailed(e);
+      }
+    }
+  }
+
+  public void parseFailed(String path) {
+    increment(parseFailures, path, 1);
+    for (AssetMetricsListener listener : listeners) {
+      try {
+        listener.parseFailed(path);
+      }
+      catch (RuntimeException e) {
+        listenerFailed(e);
+      }
+    }
+  }
+
+  public void embedRead(String path, long bytes) {
+    embedReads.incrementAndGet();
+    embedBytes.addAndGet(bytes);
+    for (AssetMetricsListener listener : listeners) {
+      try {
+        listener.embedRead(path, bytes);
+      }
+      catch (RuntimeException e) {
+        listenerFailed(e);
+      }
+    }
+  }
+
+  public void tagRendered(long nanos) {
+    tagRenders.record(nanos);
+    for (AssetMetricsListener listener : listeners) {
+      try {
+        listener.tagRendered(nanos);
+      }
+      catch (RuntimeException e) {
+        listenerFailed(e);
+      }
+    }
+  }
+
+  public void setCaches(AssetCache tagCache, PathTrie routes) {
+    this.tagCache = tagCache;
+    this.routes = routes;
+  }
+
+  public void setListeners(List<AssetMetricsListener> listeners) {
+    this.listeners.clear();
+    this.listeners.addAll(listeners);
+  }
+
+  public void addListener(AssetMetricsListener listener) {
+    listeners.add(listener);
+  }
+
+  public void register(String name) {
+
+    // another application in the same server may have registered already
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+      ObjectName registerName = new ObjectName(name);
+      server.registerMBean(this, registerName);
+      objectName = registerName;
+    }
+    catch (JMException e) {
+      LOG.warn("Unable to register asset metrics: " + name, e);
+    }
+  }
+
+  public void unregister() {
+    if (objectName != null) {
+      try {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+      }
+      catch (JMException e) {
+        LOG.warn("Unable to unregister asset metrics: " + objectName, e);
+      }
+      objectName = null;
+    }
+  }
+
+  @Override
+  public Map<String, LatencyStats> getLatencies() {
+    Map<String, LatencyStats> stats = new TreeMap<String, LatencyStats>();
+    for (Entry<String, ConcurrentMap<String, LatencyHistogram>> methodEntry : latencies
+      .entrySet()) {
+      for (Entry<String, LatencyHistogram> typeEntry : methodEntry.getValue()
+        .entrySet()) {
+        String type = typeEntry.getKey();
+        stats.put(methodEntry.getKey() + (type.length() > 0 ? "(" + type + ")"
+          : ""), typeEntry.getValue().getStats());
+      }
+    }
+    return stats;
+  }
+
+  @Override
+  public LatencyStats getTagRenderLatency() {
+    return tagRenders.getStats();
+  }
+
+  @Override
+  public Map<String, CacheStats> getCaches() {
+    Map<String, CacheStats> stats = new TreeMap<String, CacheStats>();
+    AssetCache curTagCache = tagCache;
+    if (curTagCache != null) {
+      stats.put("tags", new CacheStats(curTagCache.size(), curTagCache
+        .getMaxSize(), curTagCache.getHitCount(), curTagCache.getMissCount(),
+        curTagCache.getEvictionCount()));
+    }
+    PathTrie curRoutes = routes;
+    if (curRoutes != null) {
+      stats.put("routes", new CacheStats(curRoutes.size(), curRoutes
+        .getMaxSize(), curRoutes.getHitCount(), curRoutes.getMissCount(),
+        curRoutes.getEvictionCount()));
+    }
+    return stats;
+  }
+
+  private static Map<String, Long> toLongs(Map<String, AtomicLong> counts) {
+    Map<String, Long> longs = new TreeMap<String, Long>();
+    for (Entry<String, AtomicLong> entry : counts.entrySet()) {
+      longs.put(entry.getKey(), entry.getValue().get());
+    }
+    return longs;
+  }
+
+  @Override
+  public Map<String, Long> getTagCounts() {
+    return toLongs(tagCounts);
+  }
+
+  @Override
+  public Map<String, Long> getParseFailures() {
+    return toLongs(parseFailures);
+  }
+
+  @Override
+  public long getReloadCount() {
+    return reloads.get();
+  }
+
+  @Override
+  public long getReloadedFileCount() {
+    return reloadedFiles.get();
+  }
+
+  @Override
+  public double getLastReloadMillis() {
+    return lastReloadNanos.get() / 1000000d;
+  }
+
+  @Override
+  public double getTotalReloadMillis() {
+    return totalReloadNanos.get() / 1000000d;
+  }
+
+  @Override
+  public long getEmbedReadCount() {
+    return embedReads.get();
+  }
+
+  @Override
+  public long getEmbedBytesRead() {
+    return embedBytes.get();
+  }
+
+  @Override
+  public void reset() {
+
+    // the cache counts belong to the caches and carry on
+    latencies.clear();
+    tagCounts.clear();
+    parseFailures.clear();
+    tagRenders = new LatencyHistogram();
+    reloads.set(0);
+    reloadedFiles.set(0);
+    lastReloadNanos.set(0);
+    totalReloadNanos.set(0);
+    embedReads.set(0);
+    embedBytes.set(0);
+  }
+
+}
@@ -0,0 +1,24 @@
+package com.igfoo.core.web;
+
+public interface AssetMetricsListener {
+
+  // called with the time an asset manager getter took for an asset type
+  public void methodTimed(String method, String type, long nanos);
+
+  // called with the number of tags served for a path, pattern, or names
+  public void tagsServed(String target, int numTags);
+
+  // called with the number of config files reloaded and the time it took,
+  // including rendering the changed fragments again
+  public void reloaded(int numFiles, long nanos);
+
+  // called when a config file can't be parsed
+  public void parseFailed(String path);
+
+  // called when an embed file is read from disk
+  public void embedRead(String path, long bytes);
+
+  // called with the time an assets tag took to write its tags
+  public void tagRendered(long nanos);
+
+}
@@ -0,0 +1,36 @@
+package com.igfoo.core.web;
+
+import java.util.Map;
+
+public interface AssetMetricsMXBean {
+
+  // getter latencies by method and asset type, such as
+  // getFragmentForPath(scripts)
+  public Map<String, AssetMetrics.LatencyStats> getLatencies();
+
+  public AssetMetrics.LatencyStats getTagRenderLatency();
+
+  // the tag and route match caches
+  public Map<String, AssetMetrics.CacheStats> getCaches();
+
+  // tags served by path, pattern, or names
+  public Map<String, Long> getTagCounts();
+
+  // parse failures by config file
+  public Map<String, Long> getParseFailures();
+
+  public long getReloadCount();
+
+  public long getReloadedFileCount();
+
+  public double getLastReloadMillis();
+
+  public double getTotalReloadMillis();
+
+  public long getEmbedReadCount();
+
+  public long getEmbedBytesRead();
+
+  public void reset();
+
+}
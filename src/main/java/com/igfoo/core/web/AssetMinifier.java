@@ -0,0 +1,289 @@
+package com.igfoo.core.web;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AssetMinifier {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(AssetMinifier.class);
+
+  private static final int EOF = -1;
+
+  // a port of Douglas Crockford's jsmin, removes comments and unneeded
+  // whitespace without renaming anything, so it is safe for any script
+  private static class JsMin {
+
+    private final String input;
+    private final StringBuilder output;
+    private int index = 0;
+    private int theA;
+    private int theB;
+    private int theLookahead = EOF;
+    private int theX = EOF;
+    private int theY = EOF;
+
+    public JsMin(String input) {
+      this.input = input;
+      this.output = new StringBuilder(input.length());
+    }
+
+    private static boolean isAlphanum(int c) {
+      return (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')
+        || (c >= 'A' && c <= 'Z') || c == '_' || c == '$' || c == '\\'
+        || c > 126;
+    }
+
+    private int get() {
+      int c = theLookahead;
+      theLookahead = EOF;
+      if (c == EOF) {
+        c = (index < input.length()) ? input.charAt(index++) : EOF;
+      }
+      if (c >= ' ' || c == '\n' || c == EOF) {
+        return c;
+      }
+      if (c == '\r') {
+        return '\n';
+      }
+      return ' ';
+    }
+
+    private int peek() {
+      theLookahead = get();
+      return theLookahead;
+    }
+
+    private int next() {
+
+      // comments are removed, a block comment becomes a single space
+      int c = get();
+      if (c == '/') {
+        int p = peek();
+        if (p == '/') {
+          do {
+            c = get();
+          }
+          while (c > '\n');
+        }
+        else if (p == '*') {
+          get();
+          while (c != ' ') {
+            int d = get();
+            if (d == '*') {
+              if (peek() == '/') {
+                get();
+                c = ' ';
+              }
+            }
+            else if (d == EOF) {
+              throw new IllegalArgumentException("Unterminated comment");
+            }
+          }
+        }
+      }
+      theY = theX;
+      theX = c;
+      return c;
+    }
+
+    private void put(int c) {
+      if (c != EOF) {
+        output.append((char)c);
+      }
+    }
+
+    private void action(int d) {
+
+      // 1 output A, 2 copy B to A, 3 get the next B
+      if (d == 1) {
+        put(theA);
+        if ((theY == '\n' || theY == ' ')
+          && (theA == '+' || theA == '-' || theA == '*' || theA == '/')
+          && (theB == theA)) {
+          put(theY);
+        }
+      }
+      if (d <= 2) {
+        theA = theB;
+        if (theA == '\'' || theA == '"' || theA == '`') {
+          while (true) {
+            put(theA);
+            theA = get();
+            if (theA == theB) {
+              break;
+            }
+            if (theA == '\\') {
+              put(theA);
+              theA = get();
+            }
+            if (theA == EOF) {
+              throw new IllegalArgumentException("Unterminated string");
+            }
+          }
+        }
+      }
+      theB = next();
+      if (theB == '/'
+        && (theA == '(' || theA == ',' || theA == '=' || theA == ':'
+          || theA == '[' || theA == '!' || theA == '&' || theA == '|'
+          || theA == '?' || theA == '+' || theA == '-' || theA == '~'
+          || theA == '*' || theA == '/' || theA == '{' || theA == '}'
+          || theA == ';')) {
+
+        // a regular expression literal is copied as is
+        put(theA);
+        if (theA == '/' || theA == '*') {
+          put(' ');
+        }
+        put(theB);
+        while (true) {
+          theA = get();
+          if (theA == '[') {
+            while (true) {
+              put(theA);
+              theA = get();
+              if (theA == ']') {
+                break;
+              }
+              if (theA == '\\') {
+                put(theA);
+                theA = get();
+              }
+              if (theA == EOF) {
+                throw new IllegalArgumentException("Unterminated set");
+              }
+            }
+          }
+          else if (theA == '/') {
+            int p = peek();
+            if (p == '/' || p == '*') {
+              throw new IllegalArgumentException("Unterminated regex");
+            }
+            break;
+          }
+          else if (theA == '\\') {
+            put(theA);
+            theA = get();
+          }
+          if (theA == EOF) {
+            throw new IllegalArgumentException("Unterminated regex");
+          }
+          put(theA);
+        }
+        theB = next();
+      }
+    }
+
+    public String minify() {
+
+      theA = '\n';
+      action(3);
+      while (theA != EOF) {
+        if (theA == ' ') {
+          action(isAlphanum(theB) ? 1 : 2);
+        }
+        else if (theA == '\n') {
+          if (theB == '{' || theB == '[' || theB == '(' || theB == '+'
+            || theB == '-' || theB == '!' || theB == '~') {
+            action(1);
+          }
+          else if (theB == ' ') {
+            action(3);
+          }
+          else {
+            action(isAlphanum(theB) ? 1 : 2);
+          }
+        }
+        else if (theB == ' ') {
+          action(isAlphanum(theA) ? 1 : 3);
+        }
+        else if (theB == '\n') {
+          if (theA == '}' || theA == ']' || theA == ')' || theA == '+'
+            || theA == '-' || theA == '"' || theA == '\'' || theA == '`') {
+            action(1);
+          }
+          else {
+            action(isAlphanum(theA) ? 1 : 3);
+          }
+        }
+        else {
+          action(1);
+        }
+      }
+      return output.toString().trim();
+    }
+  }
+
+  public static String minifyJavaScript(String source) {
+
+    // a script that can't be minified is used as is
+    if (source == null) {
+      return "";
+    }
+    try {
+      return new JsMin(source.startsWith("\uFEFF") ? source.substring(1)
+        : source).minify();
+    }
+    catch (IllegalArgumentException e) {
+      LOG.warn("Unable to minify script, using it as is: " + e.getMessage());
+      return source;
+    }
+  }
+
+  private static boolean isCssSeparator(char c) {
+    return c == '{' || c == '}' || c == ';' || c == ',' || c == '>';
+  }
+
+  public static String minifyCss(String source) {
+
+    if (source == null) {
+      return "";
+    }
+
+    // strings are copied as is, comments are removed, and whitespace is
+    // collapsed and dropped around separators, spaces before a colon are
+    // kept as they change the meaning of a selector
+    StringBuilder output = new StringBuilder(source.length());
+    int index = source.startsWith("\uFEFF") ? 1 : 0;
+    boolean space = false;
+    while (index < source.length()) {
+      char c = source.charAt(index);
+      if (c == '/' && index + 1 < source.length()
+        && source.charAt(index + 1) == '*') {
+        int end = source.indexOf("*/", index + 2);
+        index = (end < 0) ? source.length() : end + 2;
+        continue;
+      }
+      if (Character.isWhitespace(c)) {
+        space = true;
+        index++;
+        continue;
+      }
+      if (space && output.length() > 0 && !isCssSeparator(c)
+        && !isCssSeparator(output.charAt(output.length() - 1))
+        && output.charAt(output.length() - 1) != ':') {
+        output.append(' ');
+      }
+      space = false;
+      if (c == '"' || c == '\'') {
+        int end = index + 1;
+        while (end < source.length() && source.charAt(end) != c) {
+          end += (source.charAt(end) == '\\') ? 2 : 1;
+        }
+        end = Math.min(end + 1, source.length());
+        output.append(source, index, end);
+        index = end;
+        continue;
+      }
+      if (c == '}' && output.length() > 0
+        && output.charAt(output.length() - 1) == ';') {
+        output.setLength(output.length() - 1);
+      }
+      output.append(c);
+      index++;
+    }
+    return output.toString();
+  }
+
+}
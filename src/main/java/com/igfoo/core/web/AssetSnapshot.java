@@ -0,0 +1,275 @@
+package com.igfoo.core.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.commons.lang.StringUtils;
+
+public class AssetSnapshot {
+
+  private final Map<String, Map<String, Object>> assets;
+  private final Map<String, Map<String, Object>> namedAssets;
+  private final Map<String, String> aliases;
+  private final Map<String, String> pathOwners;
+  private final Map<String, String> nameOwners;
+  private final Map<String, List<AssetConfig>> fileConfigs;
+  private final PathTrie routes;
+  private final AssetCache cache;
+
+  public static class Builder {
+
+    private Map<String, Map<String, Object>> assets;
+    private Map<String, Map<String, Object>> namedAssets;
+    private Map<String, String> aliases;
+    private Map<String, String> pathOwners;
+    private Map<String, String> nameOwners;
+    private Map<String, List<AssetConfig>> fileConfigs;
+    private PathTrie routes;
+    private Set<String> changedTargets = new HashSet<String>();
+    private boolean globalChanged = false;
+    private boolean routesChanged = false;
+    private String curFile;
+    private Set<String> curPaths;
+    private Set<String> curNames;
+
+    public Builder() {
+      assets = new HashMap<String, Map<String, Object>>();
+      namedAssets = new HashMap<String, Map<String, Object>>();
+      aliases = new HashMap<String, String>();
+      pathOwners = new HashMap<String, String>();
+      nameOwners = new HashMap<String, String>();
+      fileConfigs = new LinkedHashMap<String, List<AssetConfig>>();
+      globalChanged = true;
+      routesChanged = true;
+    }
+
+    public Builder(AssetSnapshot from) {
+      assets = new HashMap<String, Map<String, Object>>(from.assets);
+      namedAssets = new HashMap<String, Map<String, Object>>(from.namedAssets);
+      aliases = new HashMap<String, String>(from.aliases);
+      pathOwners = new HashMap<String, String>(from.pathOwners);
+      nameOwners = new HashMap<String, String>(from.nameOwners);
+      fileConfigs = new LinkedHashMap<String, List<AssetConfig>>(
+        from.fileConfigs);
+      routes = from.routes;
+    }
+
+    private void removeOwned(String configFile, Set<String> keepPaths,
+      Set<String> keepNames) {
+
+      // only remove assets still owned by the config file, another file could
+      // have since configured the same path or name
+      Iterator<Entry<String, String>> ownerIt = pathOwners.entrySet()
+        .iterator();
+      while (ownerIt.hasNext()) {
+        Entry<String, String> owner = ownerIt.next();
+        String path = owner.getKey();
+        if (StringUtils.equals(owner.getValue(), configFile)
+          && !keepPaths.contains(path)) {
+          ownerIt.remove();
+          assets.remove(path);
+          changed(path);
+          if (PathTrie.isPattern(path)) {
+            routesChanged = true;
+          }
+        }
+      }
+      ownerIt = nameOwners.entrySet().iterator();
+      while (ownerIt.hasNext()) {
+        Entry<String, String> owner = ownerIt.next();
+        String name = owner.getKey();
+        if (StringUtils.equals(owner.getValue(), configFile)
+          && !keepNames.contains(name)) {
+          ownerIt.remove();
+          namedAssets.remove(name);
+          changed(name);
+        }
+      }
+    }
+
+    private void changed(String target) {
+      if (StringUtils.equals(target, AssetManager.GLOBAL)) {
+        globalChanged = true;
+      }
+      changedTargets.add(target);
+    }
+
+    private void putPath(String path, Map<String, Object> pathAssets) {
+
+      // re-resolving unchanged assets shouldn't invalidate their fragments
+      Map<String, Object> previous = assets.put(path, pathAssets);
+      String previousOwner = pathOwners.put(path, curFile);
+      curPaths.add(path);
+      if (previous == null && PathTrie.isPattern(path)) {
+        routesChanged = true;
+      }
+      if (!pathAssets.equals(previous)
+        || !StringUtils.equals(curFile, previousOwner)) {
+        changed(path);
+      }
+    }
+
+    private void putName(String name, Map<String, Object> nameAssets) {
+      Map<String, Object> previous = namedAssets.put(name, nameAssets);
+      String previousOwner = nameOwners.put(name, curFile);
+      curNames.add(name);
+      if (!nameAssets.equals(previous)
+        || !StringUtils.equals(curFile, previousOwner)) {
+        changed(name);
+      }
+    }
+
+    public void putFile(String configFile, List<AssetConfig> configs) {
+
+      curFile = configFile;
+      curPaths = new HashSet<String>();
+      curNames = new HashSet<String>();
+
+      // resolve aliases and add as either global or for a specific path
+      for (AssetConfig config : configs) {
+        Map<String, Object> resolved = config.resolve(aliases);
+        if (resolved.isEmpty()) {
+          continue;
+        }
+        if (config.isGlobal()) {
+          putPath(AssetManager.GLOBAL, resolved);
+        }
+        else if (config.isNamed()) {
+          putName(config.getName(), resolved);
+        }
+        else {
+          for (String path : config.getPaths()) {
+            putPath(path, resolved);
+          }
+        }
+      }
+
+      // remove paths and names no longer in the config file
+      removeOwned(curFile, curPaths, curNames);
+      fileConfigs.put(configFile, configs);
+      curFile = null;
+      curPaths = null;
+      curNames = null;
+    }
+
+    public void removeFile(String configFile) {
+      removeOwned(configFile, Collections.<String> emptySet(),
+        Collections.<String> emptySet());
+      fileConfigs.remove(configFile);
+    }
+
+    public int setAliases(Map<String, String> newAliases) {
+
+      // find the aliases that were added, removed, or changed
+      Set<String> changedKeys = new HashSet<String>();
+      for (Entry<String, String> alias : newAliases.entrySet()) {
+        String key = alias.getKey();
+        if (!StringUtils.equals(alias.getValue(), aliases.get(key))) {
+          changedKeys.add(key);
+        }
+      }
+      for (String key : aliases.keySet()) {
+        if (!newAliases.containsKey(key)) {
+          changedKeys.add(key);
+        }
+      }
+      aliases = new HashMap<String, String>(newAliases);
+      if (changedKeys.isEmpty()) {
+        return 0;
+      }
+
+      // re-resolve only the files with assets using a changed alias, from
+      // their already parsed configs
+      int numResolved = 0;
+      for (String configFile : new ArrayList<String>(fileConfigs.keySet())) {
+        List<AssetConfig> configs = fileConfigs.get(configFile);
+        for (AssetConfig config : configs) {
+          if (config.references(changedKeys)) {
+            putFile(configFile, configs);
+            numResolved++;
+            break;
+          }
+        }
+      }
+      return numResolved;
+    }
+
+    public boolean isGlobalChanged() {
+      return globalChanged;
+    }
+
+    public Set<String> getChangedTargets() {
+      return changedTargets;
+    }
+
+    public AssetSnapshot build(AssetCache cache) {
+
+      // the pattern paths are compiled into a trie, kept along with its
+      // matches when no pattern was added or removed
+      if (routesChanged || routes == null) {
+        List<String> patterns = new ArrayList<String>();
+        for (String path : assets.keySet()) {
+          if (PathTrie.isPattern(path)) {
+            patterns.add(path);
+          }
+        }
+        routes = new PathTrie(patterns, cache.getMaxSize());
+      }
+
+      return new AssetSnapshot(assets, namedAssets, aliases, pathOwners,
+        nameOwners, fileConfigs, routes, cache);
+    }
+  }
+
+  private AssetSnapshot(Map<String, Map<String, Object>> assets,
+    Map<String, Map<String, Object>> namedAssets, Map<String, String> aliases,
+    Map<String, String> pathOwners, Map<String, String> nameOwners,
+    Map<String, List<AssetConfig>> fileConfigs, PathTrie routes,
+    AssetCache cache) {
+    this.assets = Collections.unmodifiableMap(assets);
+    this.namedAssets = Collections.unmodifiableMap(namedAssets);
+    this.aliases = Collections.unmodifiableMap(aliases);
+    this.pathOwners = Collections.unmodifiableMap(pathOwners);
+    this.nameOwners = Collections.unmodifiableMap(nameOwners);
+    this.fileConfigs = Collections.unmodifiableMap(fileConfigs);
+    this.routes = routes;
+    this.cache = cache;
+  }
+
+  public static AssetSnapshot empty(AssetCache cache) {
+    return new Builder().build(cache);
+  }
+
+  public Map<String, Map<String, Object>> getAssets() {
+    return assets;
+  }
+
+  public Map<String, Map<String, Object>> getNamedAssets() {
+    return namedAssets;
+  }
+
+  public Map<String, String> getAliases() {
+    return aliases;
+  }
+
+  public Map<String, List<AssetConfig>> getFileConfigs() {
+    return fileConfigs;
+  }
+
+  public PathTrie getRoutes() {
+    return routes;
+  }
+
+  public AssetCache getCache() {
+    return cache;
+  }
+
+}
@@ -0,0 +1,503 @@
+package com.igfoo.core.web;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.LocaleUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class AssetSnapshotFile {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(AssetSnapshotFile.class);
+
+  // files of another layout are ignored, the version changes with the layout
+  private static final int MAGIC = 0x69676173;
+  private static final int VERSION = 1;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final File file;
+
+  public static class SourceStamp
+    extends StampedFileCache.Stamp {
+
+    public SourceStamp(File file) {
+      super(file);
+    }
+
+    public SourceStamp(File file, long lastModified, long length) {
+      super(file, lastModified, length);
+    }
+  }
+
+  public static class Contents {
+
+    private String inputsHash;
+    private List<AssetConfigFile> configFiles = new ArrayList<AssetConfigFile>();
+    private Map<AssetCache.Key, AssetFragment> fragments = new LinkedHashMap<AssetCache.Key, AssetFragment>();
+    private Map<String, SourceStamp> sources = new LinkedHashMap<String, SourceStamp>();
+    private Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+    private Set<String> servedUrls = new LinkedHashSet<String>();
+    private Map<Locale, Map<String, String>> messages = new LinkedHashMap<Locale, Map<String, String>>();
+
+    public String getInputsHash() {
+      return inputsHash;
+    }
+
+    public void setInputsHash(String inputsHash) {
+      this.inputsHash = inputsHash;
+    }
+
+    public List<AssetConfigFile> getConfigFiles() {
+      return configFiles;
+    }
+
+    public Map<AssetCache.Key, AssetFragment> getFragments() {
+      return fragments;
+    }
+
+    public Map<String, SourceStamp> getSources() {
+      return sources;
+    }
+
+    public Map<String, String> getFingerprints() {
+      return fingerprints;
+    }
+
+    public Set<String> getServedUrls() {
+      return servedUrls;
+    }
+
+    public Map<Locale, Map<String, String>> getMessages() {
+      return messages;
+    }
+  }
+
+  public AssetSnapshotFile(File file) {
+    this.file = file;
+  }
+
+  public static String getKey(File file) {
+    return StampedFileCache.getKey(file);
+  }
+
+  public static String hashInputs(List<File> configs, String settings)
+    throws IOException {
+
+    // the content of every config file, in path order, and the settings
+    // rendering depends on, missing files aren't loaded so aren't inputs
+    List<String> paths = new ArrayList<String>();
+    for (File config : configs) {
+      if (config.isFile()) {
+        paths.add(config.getPath());
+      }
+    }
+    Collections.sort(paths);
+    try {
+      MessageDigest digest = MessageDigest.getInstance("SHA-1");
+      for (String path : paths) {
+        digest.update(path.getBytes(UTF8));
+        digest.update(FileUtils.readFileToByteArray(new File(path)));
+      }
+      digest.update(StringUtils.defaultString(settings).getBytes(UTF8));
+      return AssetBundler.toHex(digest.digest());
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void writeString(DataOutputStream out, String value)
+    throws IOException {
+    if (value == null) {
+      out.writeInt(-1);
+      return;
+    }
+    byte[] bytes = value.getBytes(UTF8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static int readSize(ByteBuffer in) {
+
+    // every entry takes at least a byte, so a count larger than what is left
+    // is damage and is never allocated
+    int size = in.getInt();
+    if (size < 0 || size > in.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    return size;
+  }
+
+  private static String readString(ByteBuffer in) {
+    int length = in.getInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length > in.remaining()) {
+      throw new BufferUnderflowException();
+    }
+    byte[] bytes = new byte[length];
+    in.get(bytes);
+    return new String(bytes, UTF8);
+  }
+
+  private static void writeStrings(DataOutputStream out,
+    Iterable<String> values, int size)
+    throws IOException {
+    out.writeInt(size);
+    for (String value : values) {
+      writeString(out, value);
+    }
+  }
+
+  private static List<String> readStrings(ByteBuffer in) {
+    int size = readSize(in);
+    List<String> values = new ArrayList<String>(size);
+    for (int i = 0; i < size; i++) {
+      values.add(readString(in));
+    }
+    return values;
+  }
+
+  private static void writeMap(DataOutputStream out, Map<String, String> map)
+    throws IOException {
+    out.writeInt(map.size());
+    for (Entry<String, String> entry : map.entrySet()) {
+      writeString(out, entry.getKey());
+      writeString(out, entry.getValue());
+    }
+  }
+
+  private static Map<String, String> readMap(ByteBuffer in) {
+    int size = readSize(in);
+    Map<String, String> map = new LinkedHashMap<String, String>();
+    for (int i = 0; i < size; i++) {
+      map.put(readString(in), readString(in));
+    }
+    return map;
+  }
+
+  private static void writeMaps(DataOutputStream out,
+    List<Map<String, String>> maps)
+    throws IOException {
+    out.writeInt(maps.size());
+    for (Map<String, String> map : maps) {
+      writeMap(out, map);
+    }
+  }
+
+  private static List<Map<String, String>> readMaps(ByteBuffer in) {
+    int size = readSize(in);
+    List<Map<String, String>> maps = new ArrayList<Map<String, String>>(size);
+    for (int i = 0; i < size; i++) {
+      maps.add(readMap(in));
+    }
+    return maps;
+  }
+
+  private static void writeConfigFiles(DataOutputStream out,
+    List<AssetConfigFile> configFiles)
+    throws IOException {
+
+    // the parsed configs, aliases are resolved again when they are applied
+    out.writeInt(configFiles.size());
+    for (AssetConfigFile configFile : configFiles) {
+      writeString(out, configFile.getPath());
+      out.writeBoolean(configFile.isGlobal());
+      writeMap(out, configFile.getAliases());
+      out.writeInt(configFile.getConfigs().size());
+      for (AssetConfig config : configFile.getConfigs()) {
+        writeStrings(out, config.getPaths(), config.getPaths().size());
+        writeString(out, config.getName());
+        out.writeBoolean(config.isGlobal());
+        writeString(out, config.getTitle());
+        writeMaps(out, config.getMetas());
+        writeMaps(out, config.getScripts());
+        writeMaps(out, config.getLinks());
+      }
+    }
+  }
+
+  private static List<AssetConfigFile> readConfigFiles(ByteBuffer in) {
+    int numFiles = readSize(in);
+    List<AssetConfigFile> configFiles = new ArrayList<AssetConfigFile>(
+      numFiles);
+    for (int i = 0; i < numFiles; i++) {
+      String path = readString(in);
+      boolean global = in.get() != 0;
+      Map<String, String> aliases = readMap(in);
+      int numConfigs = readSize(in);
+      List<AssetConfig> configs = new ArrayList<AssetConfig>(numConfigs);
+      for (int j = 0; j < numConfigs; j++) {
+        List<String> paths = readStrings(in);
+        String name = readString(in);
+        boolean configGlobal = in.get() != 0;
+        String title = readString(in);
+        List<Map<String, String>> metas = readMaps(in);
+        List<Map<String, String>> scripts = readMaps(in);
+        List<Map<String, String>> links = readMaps(in);
+        configs.add(new AssetConfig(paths, name, configGlobal, title, metas,
+          scripts, links));
+      }
+      configFiles.add(new AssetConfigFile(path, global, aliases, configs));
+    }
+    return configFiles;
+  }
+
+  private static void writeFragments(DataOutputStream out,
+    Map<AssetCache.Key, AssetFragment> fragments)
+    throws IOException {
+    out.writeInt(fragments.size());
+    for (Entry<AssetCache.Key, AssetFragment> entry : fragments.entrySet()) {
+      AssetCache.Key key = entry.getKey();
+      AssetFragment fragment = entry.getValue();
+      writeString(out, key.getType());
+      writeString(out, key.getTarget());
+      Locale locale = key.getLocale();
+      writeString(out, (locale != null) ? locale.toString() : null);
+      out.writeBoolean(key.isGlobal());
+      out.writeBoolean(key.isNamed());
+      List<String> tags = fragment.getTags();
+      writeStrings(out, tags, tags.size());
+      out.writeBoolean(fragment.hasKeys());
+      if (fragment.hasKeys()) {
+        for (int i = 0; i < tags.size(); i++) {
+          List<String> tagKeys = fragment.getKeys(i);
+          writeStrings(out, tagKeys, tagKeys.size());
+        }
+      }
+    }
+  }
+
+  private static Map<AssetCache.Key, AssetFragment> readFragments(
+    ByteBuffer in) {
+
+    // fragments for locales this jvm can't make are left to be rendered
+    int size = readSize(in);
+    Map<AssetCache.Key, AssetFragment> fragments = new LinkedHashMap<AssetCache.Key, AssetFragment>();
+    for (int i = 0; i < size; i++) {
+      String type = readString(in);
+      String target = readString(in);
+      String localeName = readString(in);
+      boolean global = in.get() != 0;
+      boolean named = in.get() != 0;
+      List<String> tags = readStrings(in);
+      List<List<String>> keys = null;
+      if (in.get() != 0) {
+        keys = new ArrayList<List<String>>(tags.size());
+        for (int j = 0; j < tags.size(); j++) {
+          keys.add(readStrings(in));
+        }
+      }
+      Locale locale = null;
+      try {
+        locale = (localeName != null) ? LocaleUtils.toLocale(localeName)
+          : null;
+      }
+      catch (IllegalArgumentException e) {
+        continue;
+      }
+      AssetFragment fragment = (tags.isEmpty() && keys == null)
+        ? AssetFragment.EMPTY : new AssetFragment(tags, keys);
+      fragments.put(new AssetCache.Key(type, target, locale, global, named),
+        fragment);
+    }
+    return fragments;
+  }
+
+  public void write(Contents contents)
+    throws IOException {
+
+    // the body is written first so its length and checksum can go in the
+    // header ahead of it
+    ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream(64 * 1024);
+    DataOutputStream body = new DataOutputStream(bodyBytes);
+    writeConfigFiles(body, contents.getConfigFiles());
+    writeFragments(body, contents.getFragments());
+    body.writeInt(contents.getSources().size());
+    for (Entry<String, SourceStamp> source : contents.getSources().entrySet()) {
+      writeString(body, source.getKey());
+      body.writeLong(source.getValue().getLastModified());
+      body.writeLong(source.getValue().getLength());
+    }
+    writeMap(body, contents.getFingerprints());
+    writeStrings(body, contents.getServedUrls(), contents.getServedUrls()
+      .size());
+    body.writeInt(contents.getMessages().size());
+    for (Entry<Locale, Map<String, String>> table : contents.getMessages()
+      .entrySet()) {
+      writeString(body, table.getKey().toString());
+      writeMap(body, table.getValue());
+    }
+    body.flush();
+    byte[] bodyArray = bodyBytes.toByteArray();
+    CRC32 checksum = new CRC32();
+    checksum.update(bodyArray);
+
+    // through a temp file so a snapshot is never seen partly written
+    File tempFile = new File(file.getPath() + ".tmp");
+    FileUtils.forceMkdir(file.getAbsoluteFile().getParentFile());
+    DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+      new FileOutputStream(tempFile)));
+    try {
+      out.writeInt(MAGIC);
+      out.writeInt(VERSION);
+      writeString(out, contents.getInputsHash());
+      out.writeInt(bodyArray.length);
+      out.writeLong(checksum.getValue());
+      out.write(bodyArray);
+    }
+    finally {
+      IOUtils.closeQuietly(out);
+    }
+    try {
+      replaceFile(tempFile, file);
+    }
+    catch (IOException e) {
+      FileUtils.deleteQuietly(tempFile);
+      throw e;
+    }
+  }
+
+  static void replaceFile(File tempFile, File file)
+    throws IOException {
+
+    // replaced in one step so readers see the old file or the new one, a
+    // file system that can't move atomically gets a plain replace, which
+    // can briefly leave no file on some platforms
+    try {
+      Files.move(tempFile.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    catch (AtomicMoveNotSupportedException e) {
+      Files.move(tempFile.toPath(), file.toPath(),
+        StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  public Contents read(String inputsHash) {
+
+    // null if there is no snapshot, it was saved from other inputs, or it is
+    // damaged, the caller loads the configs instead
+    if (!file.isFile()) {
+      return null;
+    }
+    FileInputStream input = null;
+    try {
+
+      // read into the heap rather than mapped, a mapping keeps the file
+      // open until it is collected and on windows blocks the next save from
+      // replacing it
+      input = new FileInputStream(file);
+      FileChannel channel = input.getChannel();
+      long fileSize = channel.size();
+      if (fileSize > Integer.MAX_VALUE) {
+        LOG.warn("Asset snapshot is too large, ignoring it: " + file.getPath());
+        return null;
+      }
+      ByteBuffer buffer = ByteBuffer.allocate((int)fileSize);
+      while (buffer.hasRemaining()) {
+        if (channel.read(buffer) < 0) {
+          throw new BufferUnderflowException();
+        }
+      }
+      buffer.flip();
+      IOUtils.closeQuietly(input);
+      input = null;
+
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        LOG.info("Asset snapshot is from another version, ignoring it: "
+          + file.getPath());
+        return null;
+      }
+      String hash = readString(buffer);
+      if (!StringUtils.equals(hash, inputsHash)) {
+        LOG.info("Asset snapshot was saved from other configs or settings, "
+          + "ignoring it: " + file.getPath());
+        return null;
+      }
+      int bodyLength = buffer.getInt();
+      long expected = buffer.getLong();
+      if (bodyLength < 0 || bodyLength != buffer.remaining()) {
+        throw new BufferUnderflowException();
+      }
+      CRC32 checksum = new CRC32();
+      checksum.update(buffer.array(), buffer.arrayOffset()
+        + buffer.position(), bodyLength);
+      if (checksum.getValue() != expected) {
+        LOG.warn("Asset snapshot is damaged, ignoring it: " + file.getPath());
+        return null;
+      }
+
+      ByteBuffer in = buffer.slice();
+      Contents contents = new Contents();
+      contents.setInputsHash(hash);
+      contents.getConfigFiles().addAll(readConfigFiles(in));
+      contents.getFragments().putAll(readFragments(in));
+      int numSources = readSize(in);
+      for (int i = 0; i < numSources; i++) {
+        String path = readString(in);
+        long lastModified = in.getLong();
+        long length = in.getLong();
+        contents.getSources().put(path,
+          new SourceStamp(new File(path), lastModified, length));
+      }
+      contents.getFingerprints().putAll(readMap(in));
+      contents.getServedUrls().addAll(readStrings(in));
+      int numTables = readSize(in);
+      for (int i = 0; i < numTables; i++) {
+        Locale locale = LocaleUtils.toLocale(readString(in));
+        contents.getMessages().put(locale, readMap(in));
+      }
+      return contents;
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to read asset snapshot: " + file.getPath(), e);
+    }
+    catch (BufferUnderflowException e) {
+      LOG.warn("Asset snapshot is truncated, ignoring it: " + file.getPath());
+    }
+    catch (RuntimeException e) {
+      LOG.warn("Unable to read asset snapshot: " + file.getPath(), e);
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+    return null;
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+}
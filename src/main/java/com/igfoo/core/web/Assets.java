@@ -16,5 +16,6 @@ public interface Assets {
   public static final String META_TAGS = "metaTags";
   public static final String LINK_TAGS = "linkTags";
   public static final String SCRIPT_TAGS = "scriptTags";
+  public static final String FOOTER_SCRIPT_TAGS = "footerScriptTags";
 
 }
@@ -0,0 +1,247 @@
+package com.igfoo.core.web;
+
+import java.io.CharArrayWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.servlet.support.RequestContextUtils;
+
+public class AssetsAssembler {
+
+  // the asset manager bean, called by name from the tags
+  public static final String ASSET_MANAGER = "assetManager";
+
+  // the assembler for the current request
+  public static final String ASSEMBLER = "assets.request.assembler";
+
+  private final HttpServletRequest request;
+  private final AssetManager assetManager;
+  private final Locale locale;
+  private final AssetMetrics metrics;
+  private final CharArrayWriter buffer = new CharArrayWriter(2048);
+  private final Set<String> writtenKeys = new HashSet<String>();
+
+  // a read only view of static tags followed by dynamic tags, neither list is
+  // copied, both are unmodifiable already
+  private static class JoinedList
+    extends AbstractList<String> {
+
+    private final List<String> first;
+    private final List<String> second;
+
+    public JoinedList(List<String> first, List<String> second) {
+      this.first = first;
+      this.second = second;
+    }
+
+    @Override
+    public String get(int index) {
+      int firstSize = first.size();
+      return index < firstSize ? first.get(index) : second.get(index
+        - firstSize);
+    }
+
+    @Override
+    public int size() {
+      return first.size() + second.size();
+    }
+  }
+
+  private AssetsAssembler(HttpServletRequest request, AssetManager assetManager) {
+    this.request = request;
+    this.assetManager = assetManager;
+    this.locale = request.getLocale();
+    this.metrics = (assetManager instanceof ReloadableAssetManager)
+      ? ((ReloadableAssetManager)assetManager).getMetrics() : null;
+  }
+
+  public static AssetsAssembler getAssembler(HttpServletRequest request) {
+
+    // the manager is looked up once per request and shared by every tag
+    AssetsAssembler assembler = (AssetsAssembler)request
+      .getAttribute(ASSEMBLER);
+    if (assembler == null) {
+      WebApplicationContext context = RequestContextUtils
+        .getWebApplicationContext(request);
+      AssetManager assetManager = (AssetManager)context.getBean(ASSET_MANAGER);
+      assembler = new AssetsAssembler(request, assetManager);
+      request.setAttribute(ASSEMBLER, assembler);
+    }
+    return assembler;
+  }
+
+  private String getTagsAttribute(String type) {
+    if (StringUtils.equals(type, AssetManager.METAS)) {
+      return Assets.META_TAGS;
+    }
+    else if (StringUtils.equals(type, AssetManager.LINKS)) {
+      return Assets.LINK_TAGS;
+    }
+    else if (StringUtils.equals(type, AssetManager.FOOTER_SCRIPTS)) {
+      return Assets.FOOTER_SCRIPT_TAGS;
+    }
+    return Assets.SCRIPT_TAGS;
+  }
+
+  private AssetFragment getDynamicFragment(String type) {
+
+    // dynamic assets are set by controllers under the type name, footer
+    // scripts are the dynamic scripts loaded in the footer
+    String attrName = StringUtils.equals(type, AssetManager.FOOTER_SCRIPTS)
+      ? Assets.SCRIPTS : type;
+    List dynAssets = (List)request.getAttribute(attrName);
+    if (dynAssets == null || dynAssets.isEmpty()) {
+      return AssetFragment.EMPTY;
+    }
+    return assetManager.getDynamicFragment(type, dynAssets, locale);
+  }
+
+  private boolean isWritten(AssetFragment fragment) {
+    for (int i = 0; i < fragment.getTags().size(); i++) {
+      for (String key : fragment.getKeys(i)) {
+        if (writtenKeys.contains(key)) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  private List<String> appendFragment(AssetFragment fragment)
+    throws IOException {
+
+    // fragments with nothing already written on the page go out as is,
+    // otherwise only the tags for assets not yet written
+    List<String> tags = fragment.getTags();
+    if (fragment.hasKeys() && !writtenKeys.isEmpty() && isWritten(fragment)) {
+      List<String> unwritten = new ArrayList<String>();
+      for (int i = 0; i < tags.size(); i++) {
+        List<String> keys = fragment.getKeys(i);
+        boolean written = false;
+        for (String key : keys) {
+          written |= writtenKeys.contains(key);
+        }
+        if (!written) {
+          buffer.append(tags.get(i)).append('\n');
+          writtenKeys.addAll(keys);
+          unwritten.add(tags.get(i));
+        }
+      }
+      return Collections.unmodifiableList(unwritten);
+    }
+
+    fragment.writeTo(buffer);
+    for (int i = 0; i < tags.size(); i++) {
+      writtenKeys.addAll(fragment.getKeys(i));
+    }
+    return tags;
+  }
+
+  private void appendTitle(String title) {
+    if (StringUtils.isNotBlank(title)) {
+      buffer.append(title).append('\n');
+      request.setAttribute(Assets.TITLE_TAG, title);
+    }
+  }
+
+  public String getRequestPath() {
+    String requestPath = (String)request.getAttribute(Assets.PATH);
+    return requestPath != null ? requestPath : request.getRequestURI();
+  }
+
+  public void appendTitleForPath(String path, boolean global, boolean dynamic) {
+
+    // dynamic titles from controller override any title for path
+    String title = null;
+    if (dynamic) {
+      String dynTitle = (String)request.getAttribute(Assets.TITLE);
+      if (StringUtils.isNotBlank(dynTitle)) {
+        title = assetManager.getDynamicTitle(dynTitle, locale);
+      }
+    }
+    if (StringUtils.isBlank(title)) {
+      title = assetManager.getTitleForPath(path, locale, global);
+    }
+    appendTitle(title);
+  }
+
+  public void appendAssetsForPath(String type, String path, boolean global,
+    boolean dynamic)
+    throws IOException {
+
+    AssetFragment fragment = assetManager.getFragmentForPath(type, path,
+      locale, global);
+    List<String> tags = appendFragment(fragment);
+
+    // dynamic tags are written after the configured ones
+    if (dynamic) {
+      List<String> dynTags = appendFragment(getDynamicFragment(type));
+      if (!dynTags.isEmpty()) {
+        tags = tags.isEmpty() ? dynTags : new JoinedList(tags, dynTags);
+      }
+    }
+
+    if (!tags.isEmpty()) {
+      request.setAttribute(getTagsAttribute(type), tags);
+    }
+  }
+
+  public void appendTitleForNames(String[] names) {
+
+    // get only the first title, multiple titles not allowed
+    for (String name : names) {
+      String title = assetManager.getTitleForName(name, locale);
+      if (StringUtils.isNotBlank(title)) {
+        appendTitle(title);
+        return;
+      }
+    }
+  }
+
+  public void appendAssetsForNames(String type, String[] names)
+    throws IOException {
+
+    // the named assets are merged, and cached, as a single fragment
+    List<String> tags = appendFragment(assetManager.getFragmentForNames(type,
+      names, locale));
+    if (!tags.isEmpty()) {
+      request.setAttribute(getTagsAttribute(type), tags);
+    }
+  }
+
+  public boolean isTimed() {
+    return metrics != null;
+  }
+
+  public void rendered(long nanos) {
+    if (metrics != null) {
+      metrics.tagRendered(nanos);
+    }
+  }
+
+  public void writeTo(Writer out)
+    throws IOException {
+
+    // everything appended by a tag goes out in a single write
+    try {
+      if (buffer.size() > 0) {
+        buffer.writeTo(out);
+      }
+    }
+    finally {
+      buffer.reset();
+    }
+  }
+
+}
@@ -1,30 +1,265 @@
 package com.igfoo.core.web;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 import javax.servlet.Filter;
 import javax.servlet.FilterChain;
 import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.ServletRequest;
 import javax.servlet.ServletResponse;
 import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
 
 public class AssetsFilter
   implements Filter {
 
+  // tomcat writes files set in these attributes straight from the kernel
+  private static final String SENDFILE_SUPPORT = "org.apache.tomcat.sendfile.support";
+  private static final String SENDFILE_FILENAME = "org.apache.tomcat.sendfile.filename";
+  private static final String SENDFILE_START = "org.apache.tomcat.sendfile.start";
+  private static final String SENDFILE_END = "org.apache.tomcat.sendfile.end";
+
+  private ServletContext servletContext;
+  private boolean serveAssets = false;
+  private boolean preload = false;
+  private volatile ReloadableAssetManager assetManager;
+
   @Override
   public void init(FilterConfig config)
     throws ServletException {
 
+    servletContext = config.getServletContext();
+    serveAssets = Boolean.parseBoolean(config.getInitParameter("serveAssets"));
+    preload = Boolean.parseBoolean(config.getInitParameter("preload"));
+  }
+
+  private ReloadableAssetManager getAssetManager() {
+
+    // looked up on first use, the application context may not exist when
+    // the filter is initialized
+    ReloadableAssetManager manager = assetManager;
+    if (manager == null) {
+      WebApplicationContext context = WebApplicationContextUtils
+        .getWebApplicationContext(servletContext);
+      if (context != null
+        && context.containsBean(AssetsAssembler.ASSET_MANAGER)) {
+        Object bean = context.getBean(AssetsAssembler.ASSET_MANAGER);
+        if (bean instanceof ReloadableAssetManager) {
+          manager = (ReloadableAssetManager)bean;
+          assetManager = manager;
+        }
+      }
+    }
+    return manager;
+  }
+
+  private static double getQuality(String acceptEncoding, String encoding) {
+
+    // the quality of the encoding, or of *, 0 if it isn't accepted at all
+    double wildcard = -1;
+    for (String accepted : StringUtils.split(acceptEncoding, ",")) {
+      String name = StringUtils.trim(StringUtils.substringBefore(accepted,
+        ";"));
+      double quality = 1;
+      String param = StringUtils.trim(StringUtils.substringAfter(accepted,
+        ";"));
+      if (param.startsWith("q=")) {
+        try {
+          quality = Double.parseDouble(param.substring(2));
+        }
+        catch (NumberFormatException e) {
+          quality = 0;
+        }
+      }
+      if (StringUtils.equalsIgnoreCase(name, encoding)) {
+        return quality;
+      }
+      else if (StringUtils.equals(name, "*")) {
+        wildcard = quality;
+      }
+    }
+    return Math.max(wildcard, 0);
+  }
+
+  private static String getEncoding(HttpServletRequest request,
+    StaticAssetStore.StaticAsset asset) {
+
+    // brotli, then gzip, then the file as it is
+    String acceptEncoding = request.getHeader("Accept-Encoding");
+    if (StringUtils.isBlank(acceptEncoding)) {
+      return StaticAssetStore.IDENTITY;
+    }
+    if (asset.hasEncoding(StaticAssetStore.BROTLI)
+      && getQuality(acceptEncoding, StaticAssetStore.BROTLI) > 0) {
+      return StaticAssetStore.BROTLI;
+    }
+    if (asset.hasEncoding(StaticAssetStore.GZIP)
+      && getQuality(acceptEncoding, StaticAssetStore.GZIP) > 0) {
+      return StaticAssetStore.GZIP;
+    }
+    return StaticAssetStore.IDENTITY;
+  }
+
+  private static boolean isNotModified(HttpServletRequest request,
+    String etag, long lastModified) {
+
+    // if-none-match wins over if-modified-since when both are sent
+    String ifNoneMatch = request.getHeader("If-None-Match");
+    if (ifNoneMatch != null) {
+      for (String match : StringUtils.split(ifNoneMatch, ",")) {
+        match = StringUtils.removeStart(StringUtils.trim(match), "W/");
+        if (StringUtils.equals(match, etag) || StringUtils.equals(match, "*")) {
+          return true;
+        }
+      }
+      return false;
+    }
+    try {
+      long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+      return ifModifiedSince >= 0
+        && (lastModified / 1000) <= (ifModifiedSince / 1000);
+    }
+    catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  private void writeFile(HttpServletRequest request,
+    HttpServletResponse response, File file, long length)
+    throws IOException {
+
+    // let the container send the file if it can, otherwise the file is
+    // transferred to the response without copying it through the heap
+    if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT))) {
+      request.setAttribute(SENDFILE_FILENAME, file.getCanonicalPath());
+      request.setAttribute(SENDFILE_START, Long.valueOf(0));
+      request.setAttribute(SENDFILE_END, Long.valueOf(length));
+      return;
+    }
+    FileInputStream input = new FileInputStream(file);
+    try {
+      OutputStream output = response.getOutputStream();
+      FileChannel channel = input.getChannel();
+      WritableByteChannel outChannel = Channels.newChannel(output);
+      long position = 0;
+      while (position < length) {
+        long transferred = channel.transferTo(position, length - position,
+          outChannel);
+        if (transferred <= 0) {
+          break;
+        }
+        position += transferred;
+      }
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private boolean serveAsset(HttpServletRequest request,
+    HttpServletResponse response)
+    throws IOException {
+
+    String method = request.getMethod();
+    boolean head = StringUtils.equals(method, "HEAD");
+    if (!head && !StringUtils.equals(method, "GET")) {
+      return false;
+    }
+    ReloadableAssetManager manager = getAssetManager();
+    if (manager == null) {
+      return false;
+    }
+
+    // only files referenced by the asset configs are served, matched on the
+    // decoded path so path parameters and escapes can't hide a file
+    String path = request.getServletPath()
+      + StringUtils.defaultString(request.getPathInfo());
+    StaticAssetStore.StaticAsset asset = manager.getStaticAsset(path);
+    if (asset == null) {
+      return false;
+    }
+
+    String encoding = getEncoding(request, asset);
+    String etag = asset.getETag(encoding);
+    response.setHeader("ETag", etag);
+    response.setHeader("Vary", "Accept-Encoding");
+    response.setDateHeader("Last-Modified", asset.getLastModified());
+    if (isNotModified(request, etag, asset.getLastModified())) {
+      response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+      return true;
+    }
+
+    String contentType = servletContext.getMimeType(path);
+    if (contentType != null) {
+      response.setContentType(contentType);
+    }
+    if (!StringUtils.equals(encoding, StaticAssetStore.IDENTITY)) {
+      response.setHeader("Content-Encoding", encoding);
+    }
+    long length = asset.getLength(encoding);
+    if (length <= Integer.MAX_VALUE) {
+      response.setContentLength((int)length);
+    }
+    if (head) {
+      return true;
+    }
+
+    byte[] bytes = asset.getBytes(encoding);
+    if (bytes != null) {
+      response.getOutputStream().write(bytes);
+    }
+    else {
+      writeFile(request, response, asset.getFile(encoding), length);
+    }
+    return true;
+  }
+
+  private void addPreloadHeader(HttpServletRequest request,
+    HttpServletResponse response) {
+
+    ReloadableAssetManager manager = getAssetManager();
+    if (manager != null) {
+      String header = manager.getPreloadHeader(request.getServletPath(),
+        request.getLocale());
+      if (StringUtils.isNotBlank(header)) {
+        response.addHeader("Link", header);
+      }
+    }
   }
 
   @Override
   public void doFilter(ServletRequest request, ServletResponse response,
     FilterChain chain)
     throws IOException, ServletException {
+
+    // the path of the original request is kept when the filter also runs
+    // for forwards to serve fingerprinted files
     HttpServletRequest httpReq = (HttpServletRequest)request;
-    request.setAttribute(Assets.PATH, httpReq.getServletPath());
+    if (serveAssets
+      && serveAsset(httpReq, (HttpServletResponse)response)) {
+      return;
+    }
+    if (request.getAttribute(Assets.PATH) == null) {
+      request.setAttribute(Assets.PATH, httpReq.getServletPath());
+
+      // preloads go out as a header before anything of the page is written
+      if (preload && StringUtils.equals(httpReq.getMethod(), "GET")) {
+        addPreloadHeader(httpReq, (HttpServletResponse)response);
+      }
+    }
     chain.doFilter(request, response);
   }
 
@@ -0,0 +1,117 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Set;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class EmbedSourceStore {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(EmbedSourceStore.class);
+
+  public static final long DEFAULT_MAP_THRESHOLD = 256 * 1024;
+
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  private final StampedFileCache<String> sources = new StampedFileCache<String>();
+  private long mapThreshold = DEFAULT_MAP_THRESHOLD;
+  private AssetMetrics metrics;
+
+  private String readSource(File file)
+    throws IOException {
+
+    // small files are read straight into a string, large files are decoded
+    // from a read only mapping to avoid an intermediate heap copy
+    if (file.length() < mapThreshold) {
+      return FileUtils.readFileToString(file, "UTF-8");
+    }
+
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+        channel.size());
+      return UTF8.decode(mapped).toString();
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  private StampedFileCache.Entry<String> loadSource(File file, long maxLength) {
+
+    // missing files are remembered as empty, files over a max length are
+    // remembered without their source
+    long lastModified = file.lastModified();
+    long length = file.length();
+    String source = "";
+    if (maxLength >= 0 && (!file.isFile() || length > maxLength)) {
+      source = null;
+    }
+    else if (file.exists()) {
+      try {
+        source = readSource(file);
+        if (metrics != null) {
+          metrics.embedRead(file.getPath(), length);
+        }
+      }
+      catch (IOException e) {
+        LOG.error("Error reading embed resource: " + file.getPath(), e);
+      }
+    }
+    return sources.put(file, source, lastModified, length);
+  }
+
+  public String getSource(File file) {
+    return getSource(file, -1);
+  }
+
+  public String getSource(File file, long maxLength) {
+
+    // null if the file is missing or longer than the max length, a negative
+    // max length reads a file of any length
+    StampedFileCache.Entry<String> entry = sources.get(file);
+    if (entry == null || (entry.getValue() == null && maxLength < 0)) {
+      entry = loadSource(file, maxLength);
+    }
+    return entry.getValue();
+  }
+
+  public Set<String> checkModified() {
+    return sources.checkModified();
+  }
+
+  public boolean invalidate(String path) {
+    return sources.invalidate(path);
+  }
+
+  public boolean hasModified() {
+    return sources.hasModified();
+  }
+
+  public Set<String> getPaths() {
+    return sources.getPaths();
+  }
+
+  public void clear() {
+    sources.clear();
+  }
+
+  public void setMapThreshold(long mapThreshold) {
+    this.mapThreshold = mapThreshold;
+  }
+
+  public void setMetrics(AssetMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+}
@@ -0,0 +1,12 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.util.Set;
+
+public interface FileChangeListener {
+
+  // called with the files created, modified, or deleted since the last call,
+  // a directory in the set means events were lost and it should be rescanned
+  public void filesChanged(Set<File> files);
+
+}
@@ -0,0 +1,194 @@
+package com.igfoo.core.web;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class FileWatcher {
+
+  private final static Logger LOG = LoggerFactory.getLogger(FileWatcher.class);
+
+  public static final long DEFAULT_DEBOUNCE = 250;
+
+  private final WatchService watchService;
+  private final FileChangeListener listener;
+  private final long debounce;
+  private Map<WatchKey, File> watchKeys = new ConcurrentHashMap<WatchKey, File>();
+  private Map<String, Boolean> watchedDirs = new ConcurrentHashMap<String, Boolean>();
+  private AtomicBoolean active = new AtomicBoolean(false);
+  private Thread watcherThread;
+
+  private class WatcherThread
+    extends Thread {
+
+    public WatcherThread(String name) {
+      super(name);
+    }
+
+    @Override
+    public void run() {
+
+      Set<File> pending = new LinkedHashSet<File>();
+      while (active.get()) {
+
+        try {
+
+          // wait for the first event, then keep collecting until the
+          // directories have been quiet for the debounce period
+          WatchKey key = null;
+          if (pending.isEmpty()) {
+            key = watchService.take();
+          }
+          else {
+            key = watchService.poll(debounce, TimeUnit.MILLISECONDS);
+          }
+
+          if (key == null) {
+            Set<File> changed = pending;
+            pending = new LinkedHashSet<File>();
+            dispatch(changed);
+            continue;
+          }
+
+          File dir = watchKeys.get(key);
+          if (dir != null) {
+            collectEvents(key, dir, pending);
+          }
+
+          // directories that are no longer accessible can't be watched
+          if (!key.reset()) {
+            watchKeys.remove(key);
+            if (dir != null) {
+              watchedDirs.remove(dir.getPath());
+            }
+          }
+        }
+        catch (InterruptedException e) {
+          // continue if interrupted
+        }
+        catch (ClosedWatchServiceException e) {
+          break;
+        }
+      }
+    }
+  }
+
+  private void collectEvents(WatchKey key, File dir, Set<File> pending) {
+
+    boolean recursive = Boolean.TRUE.equals(watchedDirs.get(dir.getPath()));
+    for (WatchEvent<?> event : key.pollEvents()) {
+
+      // lost events, the listener has to rescan the directory
+      if (event.kind() == OVERFLOW) {
+        pending.add(dir);
+        continue;
+      }
+
+      File changed = new File(dir, ((Path)event.context()).toString());
+      pending.add(changed);
+
+      // new sub directories of recursive watches are watched as well, and
+      // anything created in them before they were registered is reported
+      if (recursive && event.kind() == ENTRY_CREATE && changed.isDirectory()) {
+        try {
+          watchDirectory(changed, true);
+          pending.add(changed);
+        }
+        catch (IOException e) {
+          LOG.error("Error watching directory: " + changed.getPath(), e);
+        }
+      }
+    }
+  }
+
+  private void dispatch(Set<File> changed) {
+    try {
+      listener.filesChanged(changed);
+    }
+    catch (Exception e) {
+      LOG.error("Error handling changed files: " + changed, e);
+    }
+  }
+
+  public FileWatcher(FileChangeListener listener)
+    throws IOException {
+    this(listener, DEFAULT_DEBOUNCE);
+  }
+
+  public FileWatcher(FileChangeListener listener, long debounce)
+    throws IOException {
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.listener = listener;
+    this.debounce = debounce;
+  }
+
+  public void watchDirectory(File dir, boolean recursive)
+    throws IOException {
+
+    if (dir == null || !dir.isDirectory()) {
+      return;
+    }
+
+    // only register each directory once, a recursive watch wins
+    String dirPath = dir.getPath();
+    Boolean watched = watchedDirs.get(dirPath);
+    if (watched == null || (recursive && !watched)) {
+      WatchKey key = dir.toPath().register(watchService, ENTRY_CREATE,
+        ENTRY_DELETE, ENTRY_MODIFY);
+      watchKeys.put(key, dir);
+      watchedDirs.put(dirPath, recursive);
+    }
+
+    if (recursive) {
+      File[] children = dir.listFiles();
+      if (children != null) {
+        for (File child : children) {
+          if (child.isDirectory()) {
+            watchDirectory(child, true);
+          }
+        }
+      }
+    }
+  }
+
+  public boolean isWatching(File dir) {
+    return dir != null && watchedDirs.containsKey(dir.getPath());
+  }
+
+  public void start(String name) {
+    active.set(true);
+    watcherThread = new WatcherThread(name);
+    watcherThread.setDaemon(true);
+    watcherThread.start();
+  }
+
+  public void stop() {
+    active.set(false);
+    try {
+      watchService.close();
+    }
+    catch (IOException e) {
+      LOG.error("Error closing watch service", e);
+    }
+  }
+
+}
@@ -0,0 +1,119 @@
+package com.igfoo.core.web;
+
+import java.io.IOException;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.FilterConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.StringUtils;
+import org.springframework.web.context.WebApplicationContext;
+import org.springframework.web.context.support.WebApplicationContextUtils;
+
+public class FingerprintFilter
+  implements Filter {
+
+  // a year is the longest lifetime caches are expected to honor
+  private static final long MAX_AGE = 365L * 24L * 60L * 60L;
+  private static final String IMMUTABLE = "public, max-age=" + MAX_AGE
+    + ", immutable";
+
+  private ServletContext servletContext;
+  private String bundleDir = AssetBundler.DEFAULT_BUNDLE_DIR;
+
+  @Override
+  public void init(FilterConfig config)
+    throws ServletException {
+
+    servletContext = config.getServletContext();
+    String bundleDirParam = config.getInitParameter("bundleDir");
+    if (StringUtils.isNotBlank(bundleDirParam)) {
+      bundleDir = bundleDirParam;
+    }
+  }
+
+  private boolean isCurrent(String path, String hash) {
+
+    // without an asset manager that fingerprints, including one with
+    // fingerprinting off, there is nothing to check against and the
+    // fingerprint is trusted
+    WebApplicationContext context = WebApplicationContextUtils
+      .getWebApplicationContext(servletContext);
+    if (context == null
+      || !context.containsBean(AssetsAssembler.ASSET_MANAGER)) {
+      return true;
+    }
+    Object assetManager = context.getBean(AssetsAssembler.ASSET_MANAGER);
+    if (!(assetManager instanceof ReloadableAssetManager)
+      || !((ReloadableAssetManager)assetManager).isFingerprinting()) {
+      return true;
+    }
+    return ((ReloadableAssetManager)assetManager).isCurrentFingerprint(path,
+      hash);
+  }
+
+  private void setCacheHeaders(HttpServletResponse response,
+    boolean immutable) {
+
+    // a stale fingerprint still gets the current content, but it mustn't be
+    // cached under the old url
+    if (immutable) {
+      response.setHeader("Cache-Control", IMMUTABLE);
+      response.setDateHeader("Expires", System.currentTimeMillis()
+        + (MAX_AGE * 1000L));
+    }
+    else {
+      response.setHeader("Cache-Control", "no-cache");
+    }
+  }
+
+  @Override
+  public void doFilter(ServletRequest request, ServletResponse response,
+    FilterChain chain)
+    throws IOException, ServletException {
+
+    HttpServletRequest httpReq = (HttpServletRequest)request;
+    HttpServletResponse httpRes = (HttpServletResponse)response;
+    String method = httpReq.getMethod();
+    if (!StringUtils.equals(method, "GET")
+      && !StringUtils.equals(method, "HEAD")) {
+      chain.doFilter(request, response);
+      return;
+    }
+
+    // fingerprinted file names are forwarded to the file itself, unless a
+    // file with the fingerprinted name exists, the path is the decoded one
+    // the container maps rather than the raw request uri
+    String path = httpReq.getServletPath()
+      + StringUtils.defaultString(httpReq.getPathInfo());
+    String[] parsed = AssetFingerprinter.parsePath(path);
+    if (parsed != null && servletContext.getResource(path) == null) {
+      setCacheHeaders(httpRes, isCurrent(parsed[0], parsed[1]));
+      httpReq.getRequestDispatcher(parsed[0]).forward(request, response);
+      return;
+    }
+
+    // bundles are named by their content, fingerprinted query strings only
+    // need the headers
+    String hash = AssetFingerprinter.parseQuery(httpReq.getQueryString());
+    if (path.startsWith(StringUtils.removeEnd(bundleDir, "/") + "/")) {
+      setCacheHeaders(httpRes, true);
+    }
+    else if (hash != null) {
+      setCacheHeaders(httpRes, isCurrent(path, hash));
+    }
+    chain.doFilter(request, response);
+  }
+
+  @Override
+  public void destroy() {
+
+  }
+
+}
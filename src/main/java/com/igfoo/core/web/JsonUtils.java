@@ -1,23 +1,56 @@
 package com.igfoo.core.web;
 
 import java.io.IOException;
-import java.io.StringReader;
-import java.io.StringWriter;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import org.apache.commons.lang.StringUtils;
 import org.codehaus.jackson.JsonGenerator;
 import org.codehaus.jackson.JsonNode;
 import org.codehaus.jackson.JsonParser;
-import org.codehaus.jackson.map.MappingJsonFactory;
 import org.codehaus.jackson.map.ObjectMapper;
+import org.codehaus.jackson.map.ObjectReader;
+import org.codehaus.jackson.map.ObjectWriter;
 import org.codehaus.jackson.node.ArrayNode;
 import org.codehaus.jackson.node.TextNode;
+import org.codehaus.jackson.type.TypeReference;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 public class JsonUtils {
 
+  private final static Logger LOG = LoggerFactory.getLogger(JsonUtils.class);
+
+  // mappers, readers, and writers are thread safe once configured so a single
+  // instance is shared instead of being created per call, streams passed in
+  // belong to the caller and are left open
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  static {
+    MAPPER.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, false);
+    MAPPER.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+  }
+  private static final ObjectWriter WRITER = MAPPER.writer();
+  private static final ObjectReader TREE_READER = MAPPER.reader(JsonNode.class);
+  private static final ConcurrentMap<Class<?>, ObjectReader> READERS = new ConcurrentHashMap<Class<?>, ObjectReader>();
+
+  public static ObjectReader getReader(Class<?> valueType) {
+    ObjectReader reader = READERS.get(valueType);
+    if (reader == null) {
+      reader = MAPPER.reader(valueType);
+      ObjectReader existing = READERS.putIfAbsent(valueType, reader);
+      if (existing != null) {
+        reader = existing;
+      }
+    }
+    return reader;
+  }
+
   public static boolean looksLikeJson(String content) {
     return StringUtils.trim(content).startsWith("{");
   }
@@ -25,10 +58,9 @@ public class JsonUtils {
   public static JsonNode parseJson(String json)
     throws IOException {
 
-    ObjectMapper mapper = new ObjectMapper();
     JsonNode root = null;
     try {
-      root = mapper.readValue(new StringReader(json), JsonNode.class);
+      root = TREE_READER.readValue(json);
     }
     catch (Exception e) {
       throw new IOException("JsonConfig is invalid", e);
@@ -72,35 +104,51 @@ public class JsonUtils {
 
   public static String serializeToJson(Object object) {
 
+    // null on failure is kept for existing callers, but no longer silently
     try {
-
-      StringWriter sw = new StringWriter(); // serialize
-      ObjectMapper mapper = new ObjectMapper();
-      MappingJsonFactory jsonFactory = new MappingJsonFactory();
-      JsonGenerator jsonGenerator = jsonFactory.createJsonGenerator(sw);
-      mapper.writeValue(jsonGenerator, object);
-      sw.close();
-
-      return sw.toString();
+      return WRITER.writeValueAsString(object);
     }
     catch (Exception e) {
+      LOG.warn("Error serializing to json", e);
       return null;
     }
   }
 
-  public static Object deserializeFromJson(String json, Class valueType) {
+  public static void serializeTo(Writer writer, Object object)
+    throws IOException {
+    WRITER.writeValue(writer, object);
+  }
 
+  public static void serializeTo(OutputStream output, Object object)
+    throws IOException {
+    WRITER.writeValue(output, object);
+  }
+
+  public static Object deserializeFromJson(String json, Class<?> valueType) {
+
+    // null on failure is kept for existing callers, but no longer silently
     try {
-      ObjectMapper mapper = new ObjectMapper();
-      MappingJsonFactory jsonFactory = new MappingJsonFactory();
-      JsonParser jsonParser = jsonFactory.createJsonParser(json);
-      return mapper.readValue(jsonParser, valueType);
+      return getReader(valueType).readValue(json);
     }
     catch (Exception e) {
+      LOG.warn("Error deserializing json to " + valueType.getName(), e);
       return null;
     }
   }
 
+  public static <T> T deserializeFrom(InputStream input, Class<T> valueType)
+    throws IOException {
+    return getReader(valueType).<T> readValue(input);
+  }
+
+  public static <T> T deserializeFrom(InputStream input,
+    TypeReference<T> valueType)
+    throws IOException {
+
+    // generic types have no class to key a shared reader by
+    return MAPPER.reader(valueType).<T> readValue(input);
+  }
+
   public static List<String> getFieldNames(JsonNode parent) {
     Iterator<String> fieldNameIt = parent.getFieldNames();
     List<String> fieldNames = new ArrayList<String>();
@@ -0,0 +1,11 @@
+package com.igfoo.core.web;
+
+import java.util.Set;
+
+public interface MessageChangeListener {
+
+  // called with the message codes added, removed, or changed by a reload, a
+  // null set means any message may have changed
+  public void messagesChanged(Set<String> codes);
+
+}
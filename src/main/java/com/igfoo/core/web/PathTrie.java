@@ -0,0 +1,398 @@
+package com.igfoo.core.web;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class PathTrie {
+
+  private final static Logger LOG = LoggerFactory.getLogger(PathTrie.class);
+
+  // number of independently locked match cache segments, a power of two
+  private static final int NUM_SEGMENTS = 16;
+
+  // cached marker for paths that don't match any pattern
+  private static final String NO_MATCH = "";
+
+  private final Node root = new Node();
+  private final Set<String> patterns;
+  private final MatchSegment[] segments;
+  private final int cacheSize;
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+
+  // a matched pattern along with how specific it is, fewer any depth
+  // wildcards, then fewer wildcards, then fewer of those matching a whole
+  // segment, then more literal characters
+  private static class Route
+    implements Comparable<Route> {
+
+    private final String pattern;
+    private final int numAnyDepth;
+    private final int numWildcards;
+    private final int numSegmentWildcards;
+    private final int numLiterals;
+
+    public Route(String pattern, int numAnyDepth, int numWildcards,
+      int numSegmentWildcards, int numLiterals) {
+      this.pattern = pattern;
+      this.numAnyDepth = numAnyDepth;
+      this.numWildcards = numWildcards;
+      this.numSegmentWildcards = numSegmentWildcards;
+      this.numLiterals = numLiterals;
+    }
+
+    @Override
+    public int compareTo(Route other) {
+      if (numAnyDepth != other.numAnyDepth) {
+        return numAnyDepth < other.numAnyDepth ? -1 : 1;
+      }
+      if (numWildcards != other.numWildcards) {
+        return numWildcards < other.numWildcards ? -1 : 1;
+      }
+      if (numSegmentWildcards != other.numSegmentWildcards) {
+        return numSegmentWildcards < other.numSegmentWildcards ? -1 : 1;
+      }
+      if (numLiterals != other.numLiterals) {
+        return numLiterals > other.numLiterals ? -1 : 1;
+      }
+      return pattern.compareTo(other.pattern);
+    }
+  }
+
+  private static class Node {
+
+    private Map<String, Node> literals;
+    private Map<String, Node> patterns;
+    private Pattern regex;
+    private Node wildcard;
+    private Node anyDepth;
+    private Route route;
+  }
+
+  // a segment of the match cache, evicting its least recently used path once
+  // it grows past its share of the maximum size
+  private class MatchSegment
+    extends LinkedHashMap<String, String> {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int maxSize;
+
+    public MatchSegment(int maxSize) {
+      super(16, 0.75f, true);
+      this.maxSize = maxSize;
+    }
+
+    @Override
+    protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+      if (size() > maxSize) {
+        evictions.incrementAndGet();
+        return true;
+      }
+      return false;
+    }
+  }
+
+  public static boolean isPattern(String path) {
+    return StringUtils.containsAny(path, "*?{");
+  }
+
+  private static int findVariableEnd(String segment, int start) {
+
+    // braces are matched by depth so a regex can hold its own, such as
+    // {id:\d{3}}, -1 if the variable is never closed
+    int depth = 0;
+    for (int index = start; index < segment.length(); index++) {
+      char curChar = segment.charAt(index);
+      if (curChar == '{') {
+        depth++;
+      }
+      else if (curChar == '}' && --depth == 0) {
+        return index;
+      }
+    }
+    return -1;
+  }
+
+  private static String removeVariables(String segment) {
+
+    // every variable reduced to an empty {} for counting wildcards and
+    // literal characters
+    StringBuilder removed = new StringBuilder();
+    int index = 0;
+    while (index < segment.length()) {
+      char curChar = segment.charAt(index);
+      if (curChar == '{') {
+        int end = findVariableEnd(segment, index);
+        removed.append("{}");
+        index = (end < 0) ? segment.length() : end + 1;
+      }
+      else {
+        removed.append(curChar);
+        index++;
+      }
+    }
+    return removed.toString();
+  }
+
+  private static boolean isWildcardSegment(String segment) {
+
+    // a whole segment variable without its own regex matches any segment
+    return StringUtils.equals(segment, "*")
+      || (segment.startsWith("{")
+        && findVariableEnd(segment, 0) == segment.length() - 1 && segment
+        .indexOf(':') < 0);
+  }
+
+  private static Pattern compileSegment(String segment) {
+
+    // ant wildcards and {var} or {var:regex} variables within a segment,
+    // everything else is matched literally
+    StringBuilder regex = new StringBuilder();
+    StringBuilder literal = new StringBuilder();
+    int index = 0;
+    while (index < segment.length()) {
+      char curChar = segment.charAt(index);
+      if (curChar == '*' || curChar == '?' || curChar == '{') {
+        if (literal.length() > 0) {
+          regex.append(Pattern.quote(literal.toString()));
+          literal.setLength(0);
+        }
+        if (curChar == '*') {
+          regex.append(".*");
+        }
+        else if (curChar == '?') {
+          regex.append(".");
+        }
+        else {
+          int end = findVariableEnd(segment, index);
+          if (end < 0) {
+            end = segment.length() - 1;
+          }
+          String variable = segment.substring(index + 1, end);
+          int colon = variable.indexOf(':');
+          regex.append(colon < 0 ? ".*" : "(?:" + variable.substring(colon + 1)
+            + ")");
+          index = end;
+        }
+      }
+      else {
+        literal.append(curChar);
+      }
+      index++;
+    }
+    if (literal.length() > 0) {
+      regex.append(Pattern.quote(literal.toString()));
+    }
+    return Pattern.compile(regex.toString());
+  }
+
+  private void addPattern(String pattern) {
+
+    int numAnyDepth = 0;
+    int numWildcards = 0;
+    int numSegmentWildcards = 0;
+    int numLiterals = 0;
+
+    Node node = root;
+    for (String segment : StringUtils.split(pattern, '/')) {
+      if (StringUtils.equals(segment, "**")) {
+        if (node.anyDepth == null) {
+          node.anyDepth = new Node();
+        }
+        node = node.anyDepth;
+        numAnyDepth++;
+      }
+      else if (isWildcardSegment(segment)) {
+        if (node.wildcard == null) {
+          node.wildcard = new Node();
+        }
+        node = node.wildcard;
+        numWildcards++;
+        numSegmentWildcards++;
+      }
+      else if (isPattern(segment)) {
+        if (node.patterns == null) {
+          node.patterns = new LinkedHashMap<String, Node>();
+        }
+        Node child = node.patterns.get(segment);
+        if (child == null) {
+          child = new Node();
+          child.regex = compileSegment(segment);
+          node.patterns.put(segment, child);
+        }
+        node = child;
+        String counted = removeVariables(segment);
+        numWildcards += StringUtils.countMatches(counted, "*")
+          + StringUtils.countMatches(counted, "?")
+          + StringUtils.countMatches(counted, "{}");
+        numLiterals += counted.replaceAll("\\{\\}|[*?]", "").length();
+      }
+      else {
+        if (node.literals == null) {
+          node.literals = new HashMap<String, Node>();
+        }
+        Node child = node.literals.get(segment);
+        if (child == null) {
+          child = new Node();
+          node.literals.put(segment, child);
+        }
+        node = child;
+        numLiterals += segment.length();
+      }
+    }
+    // patterns like /a/* and /a/{id} end on the same node, the same order
+    // used between nodes picks which one it routes to
+    Route route = new Route(pattern, numAnyDepth, numWildcards,
+      numSegmentWildcards, numLiterals);
+    if (node.route == null || route.compareTo(node.route) < 0) {
+      node.route = route;
+    }
+  }
+
+  private Route collect(Node node, String[] pathSegments, int index, Route best) {
+
+    // any depth wildcards match zero or more segments
+    if (node.anyDepth != null) {
+      for (int next = index; next <= pathSegments.length; next++) {
+        best = collect(node.anyDepth, pathSegments, next, best);
+      }
+    }
+
+    if (index == pathSegments.length) {
+      if (node.route != null
+        && (best == null || node.route.compareTo(best) < 0)) {
+        return node.route;
+      }
+      return best;
+    }
+
+    String segment = pathSegments[index];
+    if (node.literals != null) {
+      Node child = node.literals.get(segment);
+      if (child != null) {
+        best = collect(child, pathSegments, index + 1, best);
+      }
+    }
+    if (node.patterns != null) {
+      for (Node child : node.patterns.values()) {
+        if (child.regex.matcher(segment).matches()) {
+          best = collect(child, pathSegments, index + 1, best);
+        }
+      }
+    }
+    if (node.wildcard != null) {
+      best = collect(node.wildcard, pathSegments, index + 1, best);
+    }
+    return best;
+  }
+
+  private MatchSegment segmentFor(String path) {
+    int hash = path.hashCode();
+    hash ^= (hash >>> 16);
+    return segments[hash & (NUM_SEGMENTS - 1)];
+  }
+
+  public PathTrie(Collection<String> patterns, int cacheSize) {
+
+    // a pattern with a broken regex is left out, it can't take down the
+    // patterns around it
+    Set<String> added = new LinkedHashSet<String>();
+    for (String pattern : patterns) {
+      try {
+        addPattern(pattern);
+        added.add(pattern);
+      }
+      catch (PatternSyntaxException e) {
+        LOG.error("Invalid path pattern, ignoring it: " + pattern, e);
+      }
+    }
+    this.patterns = Collections.unmodifiableSet(added);
+
+    this.cacheSize = cacheSize;
+    int segmentSize = Math.max(1, cacheSize / NUM_SEGMENTS);
+    segments = new MatchSegment[NUM_SEGMENTS];
+    for (int i = 0; i < NUM_SEGMENTS; i++) {
+      segments[i] = new MatchSegment(segmentSize);
+    }
+  }
+
+  public String findMatch(String path) {
+
+    // walk the trie a segment at a time, the most specific pattern wins
+    if (patterns.isEmpty() || path == null) {
+      return null;
+    }
+    Route best = collect(root, StringUtils.split(path, '/'), 0, null);
+    return best != null ? best.pattern : null;
+  }
+
+  public String match(String path) {
+
+    if (patterns.isEmpty() || path == null) {
+      return null;
+    }
+
+    // concrete paths remember their pattern, or that they have none
+    MatchSegment segment = segmentFor(path);
+    String pattern = null;
+    synchronized (segment) {
+      pattern = segment.get(path);
+    }
+    if (pattern == null) {
+      misses.incrementAndGet();
+      pattern = findMatch(path);
+      synchronized (segment) {
+        segment.put(path, pattern != null ? pattern : NO_MATCH);
+      }
+    }
+    else {
+      hits.incrementAndGet();
+    }
+    return StringUtils.isEmpty(pattern) ? null : pattern;
+  }
+
+  public int size() {
+    int size = 0;
+    for (MatchSegment segment : segments) {
+      synchronized (segment) {
+        size += segment.size();
+      }
+    }
+    return size;
+  }
+
+  public int getMaxSize() {
+    return cacheSize;
+  }
+
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  public Set<String> getPatterns() {
+    return patterns;
+  }
+
+}
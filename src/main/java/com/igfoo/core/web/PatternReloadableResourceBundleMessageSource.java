@@ -1,14 +1,34 @@
 package com.igfoo.core.web;
 
+import java.io.File;
+import java.io.IOException;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.context.support.ReloadableResourceBundleMessageSource;
 import org.springframework.core.io.ContextResource;
+import org.springframework.core.io.DefaultResourceLoader;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
 
 public class PatternReloadableResourceBundleMessageSource
   extends ReloadableResourceBundleMessageSource {
@@ -16,51 +36,590 @@ public class PatternReloadableResourceBundleMessageSource
   private final static Logger LOG = LoggerFactory
     .getLogger(PatternReloadableResourceBundleMessageSource.class);
 
-  public void setResources(Resource[] resources) {
+  private List<MessageChangeListener> listeners = new CopyOnWriteArrayList<MessageChangeListener>();
 
-    Set<String> bundleSet = new LinkedHashSet<String>();
+  private static final String PROPERTIES_SUFFIX = ".properties";
+  private static final String XML_SUFFIX = ".xml";
+
+  private static final Set<String> LANGUAGES = new HashSet<String>(
+    Arrays.asList(Locale.getISOLanguages()));
+  private static final Set<String> COUNTRIES = new HashSet<String>(
+    Arrays.asList(Locale.getISOCountries()));
+
+  // the messages of a locale without any bundle files of its own
+  private static final Locale ROOT_LOCALE = new Locale("");
+
+  // requested locales remembered with the locale of their bundle files,
+  // forgotten all at once past this many
+  private static final int MAX_BUNDLE_LOCALES = 256;
+
+  private String[] basenames = new String[0];
+  private String[] resourcePatterns;
+  private ResourceLoader resourceLoader = new DefaultResourceLoader();
+  private int cacheSeconds = -1;
+  private boolean watchFiles = false;
+  private long watchDebounce = FileWatcher.DEFAULT_DEBOUNCE;
+  private volatile FileWatcher watcher;
+  private Map<String, String> watchedFiles = new ConcurrentHashMap<String, String>();
+  private volatile ConcurrentMap<Locale, LocaleMessages> localeMessages = new ConcurrentHashMap<Locale, LocaleMessages>();
+  private volatile ConcurrentMap<Locale, Locale> bundleLocales = new ConcurrentHashMap<Locale, Locale>();
+  private final Object reloadLock = new Object();
+
+  // every message for a locale with the fallback chain already applied, and
+  // the message formats created from them
+  private static class LocaleMessages {
+
+    private final Map<String, String> messages;
+    private final ConcurrentMap<String, MessageFormat> formats = new ConcurrentHashMap<String, MessageFormat>();
+
+    public LocaleMessages(Map<String, String> messages) {
+      this.messages = messages;
+    }
+  }
+
+  private class BundleChangeListener
+    implements FileChangeListener {
+
+    @Override
+    public void filesChanged(Set<File> files) {
+
+      // lost events reload every bundle file, otherwise only changed ones,
+      // and added or deleted files could add or remove a bundle or a locale
+      Set<String> filenames = new LinkedHashSet<String>();
+      boolean rescan = false;
+      boolean localesChanged = false;
+      for (File file : files) {
+        if (file.isDirectory()) {
+          filenames.addAll(watchedFiles.values());
+          rescan = true;
+        }
+        else {
+          String filename = watchedFiles.get(file.getAbsolutePath());
+          if (filename == null) {
+            filename = getLocaleFilename(file);
+            localesChanged |= (filename != null);
+          }
+          if (filename != null) {
+            filenames.add(filename);
+            localesChanged |= !file.exists();
+          }
+          rescan |= (filename == null || !file.exists());
+        }
+      }
+
+      String[] bundles = null;
+      if (rescan && resourcePatterns != null) {
+        bundles = resolveResourcePatterns();
+        if (Arrays.equals(bundles, basenames)) {
+          bundles = null;
+        }
+      }
+      if (!filenames.isEmpty() || bundles != null) {
+        reload(filenames, bundles, localesChanged);
+      }
+    }
+  }
+
+  private Map<String, String> toMap(Properties props) {
+    Map<String, String> propMap = new HashMap<String, String>();
+    if (props != null) {
+      for (String code : props.stringPropertyNames()) {
+        propMap.put(code, props.getProperty(code));
+      }
+    }
+    return propMap;
+  }
+
+  private Set<String> getChangedCodes(Map<String, String> oldMessages,
+    Map<String, String> newMessages) {
+
+    Set<String> changed = new HashSet<String>();
+    for (Map.Entry<String, String> oldMessage : oldMessages.entrySet()) {
+      if (!StringUtils.equals(oldMessage.getValue(), newMessages
+        .get(oldMessage.getKey()))) {
+        changed.add(oldMessage.getKey());
+      }
+    }
+    for (String code : newMessages.keySet()) {
+      if (!oldMessages.containsKey(code)) {
+        changed.add(code);
+      }
+    }
+    return changed;
+  }
+
+  private void watchFile(String filename) {
+
+    // a bundle file is either properties or xml, and may not exist yet
+    for (String suffix : new String[] {PROPERTIES_SUFFIX, XML_SUFFIX}) {
+      try {
+        File file = resourceLoader.getResource(filename + suffix).getFile()
+          .getAbsoluteFile();
+        if (watchedFiles.put(file.getPath(), filename) == null) {
+          getWatcher().watchDirectory(file.getParentFile(), false);
+        }
+      }
+      catch (IOException e) {
+        // not on the file system, can't be watched
+      }
+    }
+  }
+
+  private FileWatcher getWatcher()
+    throws IOException {
+    if (watcher == null) {
+      FileWatcher newWatcher = new FileWatcher(new BundleChangeListener(),
+        watchDebounce);
+      newWatcher.start("message-watcher");
+      watcher = newWatcher;
+    }
+    return watcher;
+  }
+
+  private LocaleMessages mergeMessages(Locale locale) {
+
+    // earlier basenames win over later ones and within a basename the most
+    // specific file wins, fr_CA over fr over the default, so apply them from
+    // the last basename and least specific file up
+    Map<String, String> merged = new HashMap<String, String>();
+    for (int i = basenames.length - 1; i >= 0; i--) {
+      List<String> filenames = calculateAllFilenames(basenames[i], locale);
+      for (int j = filenames.size() - 1; j >= 0; j--) {
+        String filename = filenames.get(j);
+        merged.putAll(toMap(getProperties(filename).getProperties()));
+        watchFile(filename);
+      }
+    }
+    return new LocaleMessages(merged);
+  }
+
+  private String getLocaleFilename(File file) {
+
+    // a file added next to a bundle, such as messages_fr_CA.properties beside
+    // messages.properties, is a new locale of that bundle
+    String name = FilenameUtils.getBaseName(file.getName());
+    String extension = FilenameUtils.getExtension(file.getName());
+    String base = getBasename(name);
+    if (StringUtils.equals(base, name)
+      || (!StringUtils.equals(extension, "properties") && !StringUtils
+        .equals(extension, "xml"))) {
+      return null;
+    }
+    for (String basename : basenames) {
+      if (!StringUtils.equals(FilenameUtils.getName(basename), base)) {
+        continue;
+      }
+      String filename = basename + name.substring(base.length());
+      try {
+        File localeFile = resourceLoader.getResource(
+          filename + "." + extension).getFile().getAbsoluteFile();
+        if (localeFile.equals(file.getAbsoluteFile())) {
+          watchedFiles.put(localeFile.getPath(), filename);
+          return filename;
+        }
+      }
+      catch (IOException e) {
+        // not on the file system, can't have changed
+      }
+    }
+    return null;
+  }
+
+  private boolean hasBundleFile(Locale locale) {
+    for (String basename : basenames) {
+      if (getProperties(basename + "_" + locale).getProperties() != null) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private Locale getBundleLocale(Locale locale) {
+
+    // the most specific locale with a bundle file, requests for fr_XX or any
+    // other locale without its own files share the messages merged for fr,
+    // so the merged maps are bounded by the files rather than the requests
+    String language = locale.getLanguage();
+    String country = locale.getCountry();
+    if (language.length() > 0) {
+      if (locale.getVariant().length() > 0 && hasBundleFile(locale)) {
+        return locale;
+      }
+      Locale countryLocale = new Locale(language, country);
+      if (country.length() > 0 && hasBundleFile(countryLocale)) {
+        return countryLocale;
+      }
+      Locale languageLocale = new Locale(language);
+      if (hasBundleFile(languageLocale)) {
+        return languageLocale;
+      }
+    }
+    return ROOT_LOCALE;
+  }
+
+  private void resetLocaleMessages() {
+    localeMessages = new ConcurrentHashMap<Locale, LocaleMessages>();
+    bundleLocales = new ConcurrentHashMap<Locale, Locale>();
+  }
+
+  private LocaleMessages getLocaleMessages(Locale locale) {
+
+    // the bundle locale is found once per requested locale, so a lookup
+    // doesn't check bundle files, and the messages once per bundle locale
+    Locale bundleLocale = bundleLocales.get(locale);
+    if (bundleLocale == null) {
+      synchronized (reloadLock) {
+        bundleLocale = bundleLocales.get(locale);
+        if (bundleLocale == null) {
+          bundleLocale = getBundleLocale(locale);
+          if (bundleLocales.size() >= MAX_BUNDLE_LOCALES) {
+            bundleLocales.clear();
+          }
+          bundleLocales.put(locale, bundleLocale);
+        }
+      }
+    }
+    LocaleMessages messages = localeMessages.get(bundleLocale);
+    if (messages == null) {
+      synchronized (reloadLock) {
+        messages = localeMessages.get(bundleLocale);
+        if (messages == null) {
+          messages = mergeMessages(bundleLocale);
+          localeMessages.put(bundleLocale, messages);
+        }
+      }
+    }
+    return messages;
+  }
+
+  private void reload(Set<String> filenames, String[] bundles,
+    boolean localesChanged) {
+
+    Set<String> changed = new HashSet<String>();
+    synchronized (reloadLock) {
+
+      // swap in any new set of bundles and read the changed files again, then
+      // merge every locale already in use and compare against what it had
+      if (bundles != null) {
+        LOG.info("Resource bundles changed: " + Arrays.asList(bundles));
+        super.setBasenames(bundles);
+        basenames = bundles;
+        bundleLocales = new ConcurrentHashMap<Locale, Locale>();
+      }
+      for (String filename : filenames) {
+        refreshProperties(filename, getProperties(filename));
+      }
+
+      // an added or deleted locale file changes which merged messages some
+      // locales use, so everything is merged again on next use
+      if (localesChanged) {
+        LOG.info("Locale files changed: " + filenames);
+        resetLocaleMessages();
+      }
+      ConcurrentMap<Locale, LocaleMessages> reloaded = new ConcurrentHashMap<Locale, LocaleMessages>();
+      for (Map.Entry<Locale, LocaleMessages> entry : localeMessages.entrySet()) {
+        LocaleMessages messages = mergeMessages(entry.getKey());
+        changed.addAll(getChangedCodes(entry.getValue().messages,
+          messages.messages));
+        reloaded.put(entry.getKey(), messages);
+      }
+      localeMessages = reloaded;
+    }
+
+    // listeners are told once the new messages are in place
+    if (localesChanged) {
+      fireMessagesChanged(null);
+    }
+    else if (!changed.isEmpty()) {
+      LOG.info("Reloaded messages: " + changed.size() + " changed");
+      fireMessagesChanged(changed);
+    }
+  }
+
+  protected String getBasename(String name) {
+
+    // strip a locale suffix, _fr, _fr_CA, _fr__POSIX, or _fr_CA_POSIX, only
+    // when it is made of real language and country codes so names such as
+    // site_i18n or messages_app are left alone
+    String[] parts = StringUtils.splitPreserveAllTokens(name, '_');
+    for (int i = 1; i < parts.length; i++) {
+      if (!LANGUAGES.contains(parts[i])) {
+        continue;
+      }
+      int numRest = parts.length - i - 1;
+      if (numRest == 0) {
+        return StringUtils.join(parts, '_', 0, i);
+      }
+      String country = parts[i + 1];
+      boolean isCountry = COUNTRIES.contains(country)
+        || (country.length() == 3 && StringUtils.isNumeric(country));
+      if ((numRest == 1 && isCountry)
+        || (numRest == 2 && (isCountry || country.length() == 0) && parts[i + 2]
+          .length() > 0)) {
+        return StringUtils.join(parts, '_', 0, i);
+      }
+    }
+    return name;
+  }
+
+  private String[] getBasenames(Resource[] resources) {
+
+    Set<String> paths = new LinkedHashSet<String>();
     for (Resource resource : resources) {
 
-      // ignore non-existent resources and those not loaded from the file 
+      // ignore non-existent resources and those not loaded from the file
       // system, classpath, or servlet container
       if (!resource.exists() || !(resource instanceof ContextResource)) {
         continue;
       }
 
-      // are we looking at an xml or properties file
-      String filename = resource.getFilename();
-      boolean isProps = filename.endsWith(".properties");
-      boolean isXml = filename.endsWith(".xml");
+      // has to be an xml or properties file
+      String path = ((ContextResource)resource).getPathWithinContext();
+      String extension = FilenameUtils.getExtension(path);
+      if (!StringUtils.equals(extension, "properties")
+        && !StringUtils.equals(extension, "xml")) {
+        continue;
+      }
+      paths.add(FilenameUtils.removeExtension(path));
+    }
 
-      // has to be one of the two
-      if (isProps || isXml) {
+    // basename will be from root path to end of file name without the
+    // extension or locale, example /web-inf/messages_fr.xml would be
+    // translated to /web-inf/messages
+    Map<String, String> stripped = new HashMap<String, String>();
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (String pathNoExt : paths) {
+      String name = FilenameUtils.getName(pathNoExt);
+      String base = pathNoExt.substring(0, pathNoExt.length() - name.length())
+        + getBasename(name);
+      stripped.put(pathNoExt, base);
+      Integer count = counts.get(base);
+      counts.put(base, (count == null) ? 1 : count + 1);
+    }
 
-        // basenames are /messages.xml, so ignore their localized
-        // counterparts, /messages_en.xml, they will be loaded later
-        String[] nameExtension = StringUtils.split(filename, ".");
-        if (nameExtension != null && nameExtension.length == 2) {
-          String name = nameExtension[0];
-          if (name.charAt(name.length() - 4) == '_') {
-            continue;
-          }
-        }
+    Set<String> bundleSet = new LinkedHashSet<String>();
+    for (String pathNoExt : paths) {
 
-        // basename will be from root path to end of file name without the
-        // extension, example /web-inf/messages.xml would be translated to
-        // /web-inf/messages
-        String path = ((ContextResource)resource).getPathWithinContext();
-        int extLen = isProps ? 11 : 4;
-        String bundle = path.substring(0, path.length() - extLen);
+      // the locale is only stripped when it is part of a chain, the base file
+      // or other locales of it exist, so a lone user_id.properties keeps its
+      // name instead of becoming the Indonesian locale of a missing user
+      String bundle = stripped.get(pathNoExt);
+      if (!paths.contains(bundle) && counts.get(bundle) < 2) {
+        bundle = pathNoExt;
+      }
 
-        bundleSet.add(bundle);
+      // rescans only log bundles that weren't already known
+      if (bundleSet.add(bundle) && !ArrayUtils.contains(basenames, bundle)) {
         LOG.info("Added resource bundle: " + bundle);
       }
     }
 
-    int numBundles = bundleSet.size();
-    if (numBundles > 0) {
-      String[] bundles = bundleSet.toArray(new String[numBundles]);
-      super.setBasenames(bundles);
+    return bundleSet.toArray(new String[bundleSet.size()]);
+  }
+
+  private String[] resolveResourcePatterns() {
+
+    if (resourcePatterns == null) {
+      return new String[0];
+    }
+
+    List<Resource> resources = new ArrayList<Resource>();
+    ResourcePatternResolver resolver = ResourcePatternUtils
+      .getResourcePatternResolver(resourceLoader);
+    for (String resourcePattern : resourcePatterns) {
+      try {
+        resources.addAll(Arrays.asList(resolver.getResources(resourcePattern)));
+        if (watchFiles) {
+          watchPatternRoot(resolver, resourcePattern);
+        }
+      }
+      catch (IOException e) {
+        LOG.error("Error resolving resource bundles: " + resourcePattern, e);
+      }
+    }
+    return getBasenames(resources.toArray(new Resource[resources.size()]));
+  }
+
+  private void watchPatternRoot(ResourcePatternResolver resolver,
+    String resourcePattern) {
+
+    // watch everything below the part of the pattern without wildcards, for
+    // example /WEB-INF/bundles/ for /WEB-INF/bundles/**/*_i18n.xml
+    int wildcard = StringUtils.indexOfAny(resourcePattern, "*?{");
+    if (wildcard < 0) {
+      wildcard = resourcePattern.length();
+    }
+    String rootLocation = resourcePattern.substring(0, resourcePattern
+      .lastIndexOf('/', wildcard) + 1);
+    try {
+      getWatcher().watchDirectory(resolver.getResource(rootLocation)
+        .getFile(), true);
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to watch resource bundles: " + rootLocation);
+    }
+  }
+
+  protected void fireMessagesChanged(Set<String> codes) {
+    for (MessageChangeListener listener : listeners) {
+      try {
+        listener.messagesChanged(codes);
+      }
+      catch (Exception e) {
+        LOG.error("Error notifying message change listener", e);
+      }
+    }
+  }
+
+  @Override
+  protected PropertiesHolder refreshProperties(String filename,
+    PropertiesHolder propHolder) {
+
+    // the same holder comes back when the file hasn't changed, a new holder
+    // replacing an existing one means the file was reloaded, first loads
+    // aren't changes, when watching files changes are found after merging
+    PropertiesHolder refreshed = super.refreshProperties(filename, propHolder);
+    if (!watchFiles && propHolder != null && refreshed != propHolder) {
+      Set<String> changed = getChangedCodes(toMap(propHolder.getProperties()),
+        toMap(refreshed.getProperties()));
+      if (!changed.isEmpty()) {
+        LOG.info("Reloaded messages: " + filename + ", " + changed.size()
+          + " changed");
+        fireMessagesChanged(changed);
+      }
+    }
+    return refreshed;
+  }
+
+  @Override
+  protected String resolveCodeWithoutArguments(String code, Locale locale) {
+    if (!watchFiles) {
+      return super.resolveCodeWithoutArguments(code, locale);
+    }
+    return getLocaleMessages(locale).messages.get(code);
+  }
+
+  @Override
+  protected MessageFormat resolveCode(String code, Locale locale) {
+    if (!watchFiles) {
+      return super.resolveCode(code, locale);
+    }
+
+    // formats are created once per message and locale, like the parent does
+    LocaleMessages messages = getLocaleMessages(locale);
+    MessageFormat format = messages.formats.get(code);
+    if (format == null) {
+      String message = messages.messages.get(code);
+      if (message == null) {
+        return null;
+      }
+      format = createMessageFormat(message, locale);
+      MessageFormat existing = messages.formats.putIfAbsent(code, format);
+      if (existing != null) {
+        format = existing;
+      }
+    }
+    return format;
+  }
+
+  @Override
+  public void clearCache() {
+    super.clearCache();
+    resetLocaleMessages();
+    fireMessagesChanged(null);
+  }
+
+  @Override
+  public void setBasenames(String[] basenames) {
+    super.setBasenames(basenames);
+    List<String> trimmed = new ArrayList<String>();
+    if (basenames != null) {
+      for (String basename : basenames) {
+        trimmed.add(StringUtils.trim(basename));
+      }
+    }
+    this.basenames = trimmed.toArray(new String[trimmed.size()]);
+    resetLocaleMessages();
+  }
+
+  @Override
+  public void setResourceLoader(ResourceLoader resourceLoader) {
+    super.setResourceLoader(resourceLoader);
+    this.resourceLoader = (resourceLoader != null) ? resourceLoader
+      : new DefaultResourceLoader();
+    if (resourcePatterns != null) {
+      String[] bundles = resolveResourcePatterns();
+      if (bundles.length > 0) {
+        setBasenames(bundles);
+      }
+    }
+  }
+
+  @Override
+  public void setCacheSeconds(int cacheSeconds) {
+
+    // files being watched are cached forever and reloaded when they change
+    this.cacheSeconds = cacheSeconds;
+    if (!watchFiles) {
+      super.setCacheSeconds(cacheSeconds);
+    }
+  }
+
+  public void setWatchFiles(boolean watchFiles) {
+    this.watchFiles = watchFiles;
+    super.setCacheSeconds(watchFiles ? -1 : cacheSeconds);
+    resetLocaleMessages();
+    if (watchFiles && resourcePatterns != null
+      && resourceLoader instanceof ResourcePatternResolver) {
+      resolveResourcePatterns();
+    }
+  }
+
+  public boolean isNotifyingChanges() {
+
+    // every change reaches the listeners without a message being resolved
+    // when files are watched or never reloaded, with a cache timeout changes
+    // are only found as messages are resolved
+    return watchFiles || cacheSeconds < 0;
+  }
+
+  public void setWatchDebounce(long watchDebounce) {
+    this.watchDebounce = watchDebounce;
+  }
+
+  public void shutdown() {
+    if (watcher != null) {
+      watcher.stop();
+      watcher = null;
+    }
+  }
+
+  public void addMessageChangeListener(MessageChangeListener listener) {
+    listeners.add(listener);
+  }
+
+  public void removeMessageChangeListener(MessageChangeListener listener) {
+    listeners.remove(listener);
+  }
+
+  public void setResources(Resource[] resources) {
+    String[] bundles = getBasenames(resources);
+    if (bundles.length > 0) {
+      setBasenames(bundles);
+    }
+  }
+
+  public void setResourcePatterns(String[] resourcePatterns) {
+
+    // patterns are kept so bundles added later can be found, within an
+    // application context they are resolved once the context is set as the
+    // resource loader, the default loader doesn't know the servlet context
+    this.resourcePatterns = resourcePatterns;
+    if (resourceLoader instanceof ResourcePatternResolver) {
+      String[] bundles = resolveResourcePatterns();
+      if (bundles.length > 0) {
+        setBasenames(bundles);
+      }
     }
   }
 }
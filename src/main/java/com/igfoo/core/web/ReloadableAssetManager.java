@@ -2,83 +2,148 @@ package com.igfoo.core.web;
 
 import java.io.File;
 import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.StringUtils;
-import org.codehaus.jackson.JsonNode;
-import org.codehaus.jackson.map.ObjectMapper;
-import org.codehaus.jackson.node.ArrayNode;
-import org.codehaus.jackson.node.TextNode;
+import org.codehaus.jackson.JsonLocation;
+import org.codehaus.jackson.JsonProcessingException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.HierarchicalMessageSource;
 import org.springframework.context.MessageSource;
 import org.springframework.context.MessageSourceAware;
-import org.springframework.context.NoSuchMessageException;
+import org.springframework.context.ResourceLoaderAware;
+import org.springframework.context.support.AbstractApplicationContext;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.core.io.support.PathMatchingResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternResolver;
+import org.springframework.core.io.support.ResourcePatternUtils;
+import org.springframework.util.AntPathMatcher;
 
 public class ReloadableAssetManager
-  implements MessageSourceAware, AssetManager {
+  implements MessageSourceAware, ResourceLoaderAware, AssetManager {
 
   private final static Logger LOG = LoggerFactory
     .getLogger(ReloadableAssetManager.class);
 
   private MessageSource messageSource;
+  private PatternReloadableResourceBundleMessageSource changeSource;
+  private volatile boolean messageTablesEnabled = false;
   private Resource[] resources;
   private String rootDir;
   private Map<String, Long> fileModTimes = new ConcurrentHashMap<String, Long>();
-  private Map<String, String> aliases = new ConcurrentHashMap<String, String>();
-  private Map<String, Map> assets = new ConcurrentHashMap<String, Map>();
-  private Map<String, Map> namedAssets = new ConcurrentHashMap<String, Map>();
+  private String resourcePattern;
+  private ResourceLoader resourceLoader;
+  private File patternRoot;
+  private String patternSubPath;
+  private Map<String, Long> dirModTimes = new HashMap<String, Long>();
+  private AntPathMatcher pathMatcher = new AntPathMatcher();
   private boolean caching = false;
+  private int cacheSize = AssetCache.DEFAULT_MAX_SIZE;
+  private volatile AssetSnapshot snapshot = AssetSnapshot
+    .empty(new AssetCache(cacheSize));
+  private Locale[] locales;
+  private EmbedSourceStore embedSources = new EmbedSourceStore();
+  private EmbedSourceStore inlineSources = new EmbedSourceStore();
+  private long inlineThreshold = DEFAULT_INLINE_THRESHOLD;
+  private String scriptLoad;
   private long reloadInterval = 2000;
   private AssetReloaderThread reloader;
+  private boolean watchFiles = true;
+  private long watchDebounce = FileWatcher.DEFAULT_DEBOUNCE;
+  private volatile FileWatcher watcher;
   private AtomicBoolean active = new AtomicBoolean(false);
-
-  private Map<String, List> scriptsCache = new HashMap<String, List>();
-  private Map<String, List> metaCache = new HashMap<String, List>();
-  private Map<String, List> linksCache = new HashMap<String, List>();
-  private Map<String, String> titleCache = new HashMap<String, String>();
+  private AssetConfigParser configParser = new AssetConfigParser();
+  private int loadThreads = Runtime.getRuntime().availableProcessors();
+  private boolean bundling = false;
+  private boolean minify = true;
+  private String bundleDir = AssetBundler.DEFAULT_BUNDLE_DIR;
+  private AssetBundler bundler;
+  private boolean fingerprinting = false;
+  private String fingerprintStyle = AssetFingerprinter.PATH;
+  private AssetFingerprinter fingerprinter;
+  private boolean serveAssets = false;
+  private StaticAssetStore staticAssets;
+  private boolean integrity = false;
+  private String integrityIndexFile;
+  private AssetIntegrityIndex integrityIndex;
+  private String snapshotFile;
+  private AssetSnapshotFile snapshotStore;
+  private AssetSnapshot savedSnapshot;
+  private int savedSize = -1;
+  private Map<String, AssetSnapshotFile.SourceStamp> restoredSources = new ConcurrentHashMap<String, AssetSnapshotFile.SourceStamp>();
+  private boolean metricsEnabled = false;
+  private String metricsObjectName = AssetMetrics.DEFAULT_OBJECT_NAME;
+  private List<AssetMetricsListener> metricsListeners = new ArrayList<AssetMetricsListener>();
+  private AssetMetrics metrics;
+  private ConcurrentMap<Locale, Map<String, String>> messageTables = new ConcurrentHashMap<Locale, Map<String, String>>();
+  private Set<Locale> tableLocales = new HashSet<Locale>();
+  private MessageChangeListener messageListener = new AssetMessageListener();
+  private ExecutorService messageReloader;
+  private final Set<String> pendingCodes = new HashSet<String>();
+  private boolean pendingAllCodes = false;
+  private boolean messageReloadQueued = false;
 
   public static final String GLOBAL_FILE = "global-assets.json";
 
-  public static final String GLOBAL = "global";
-  public static final String SCRIPTS = "scripts";
-  public static final String METAS = "metas";
-  public static final String LINKS = "links";
-  public static final String TITLE = "title";
+  public static final long DEFAULT_INLINE_THRESHOLD = 4 * 1024;
+
+  private static final String[] ASSET_TYPES = {TITLE, METAS, LINKS, SCRIPTS};
+
+  // the types rendered, footer scripts are configured as scripts
+  private static final String[] FRAGMENT_TYPES = {TITLE, METAS, LINKS,
+    SCRIPTS, FOOTER_SCRIPTS};
+
+  // the cached link header of a path's preloaded assets
+  private static final String PRELOAD_HEADER = "preloadHeader";
 
   private class AssetReloaderThread
     extends Thread {
 
+    public AssetReloaderThread() {
+      super("asset-reloader");
+    }
+
     @Override
     public void run() {
 
       while (active.get()) {
 
-        // loop through the files checking for updated modified times
-        for (Entry<String, Long> fileMod : fileModTimes.entrySet()) {
-          File config = new File(fileMod.getKey());
-          if (config.exists() && (config.lastModified() > fileMod.getValue())) {
-            String assetFilename = config.getName();
-            if (StringUtils.equalsIgnoreCase(assetFilename, GLOBAL_FILE)) {
-              LOG.info("Global config changed, reloading all asset configs");
-              loadAllAssetConfigFiles();
-            }
-            else {
-              LOG.info("Asset config changed, reloading: " + config.getPath());
-              loadAssetConfigFile(config);
-            }
-          }
+        // check every config and embed file for updated modified times,
+        // rescanning for added and deleted configs if a directory changed
+        if (patternDirectoriesChanged()) {
+          rescanResources();
+        }
+        else {
+          reloadModified();
         }
 
         // sleep and then do it all over again
@@ -92,216 +157,736 @@ public class ReloadableAssetManager
     }
   }
 
-  private String replaceAlias(String value) {
+  private class AssetMessageListener
+    implements MessageChangeListener {
+
+    @Override
+    public void messagesChanged(final Set<String> codes) {
+
+      // forget the changed messages now, this is called from within the
+      // message source so the affected fragments are re-rendered separately
+      if (codes == null) {
+        messageTables.clear();
+      }
+      else {
+        for (Map<String, String> messageTable : messageTables.values()) {
+          messageTable.keySet().removeAll(codes);
+        }
+      }
+      if (active.get()) {
+        queueMessageReload(codes);
+      }
+    }
+  }
+
+  private class AssetChangeListener
+    implements FileChangeListener {
+
+    @Override
+    public void filesChanged(Set<File> files) {
+
+      List<File> configs = new ArrayList<File>();
+      List<File> deleted = new ArrayList<File>();
+      boolean sourcesChanged = false;
+      for (File file : files) {
+
+        // lost watch events or a new directory, rescan for configs
+        if (file.isDirectory()) {
+          rescanResources();
+          return;
+        }
+
+        // known configs are reloaded or unloaded, new files matching the
+        // resource pattern are loaded, anything else could be an embed,
+        // bundled, or fingerprinted file or an unrelated file in a watched
+        // directory
+        Long modTime = fileModTimes.get(file.getPath());
+        if (modTime != null) {
+          if (!file.exists()) {
+            deleted.add(file);
+          }
+          else if (file.lastModified() != modTime) {
+            configs.add(file);
+          }
+        }
+        else if (invalidateSource(file.getPath())) {
+          sourcesChanged = true;
+        }
+        else if (file.isFile() && matchesResourcePattern(file)) {
+          LOG.info("Asset config added: " + file.getPath());
+          addResource(file);
+          configs.add(file);
+        }
+      }
 
-    if (StringUtils.isNotBlank(value) && StringUtils.startsWith(value, "${")
-      && StringUtils.endsWith(value, "}")) {
-      
-      String key = StringUtils.removeStart(value, "${");
-      key = StringUtils.removeEnd(key, "}");
-      
-      return aliases.get(key);
+      reloadChanged(configs, deleted, sourcesChanged);
     }
-    
-    return value;
   }
 
-  private Map<String, String> replaceAliases(Map<String, String> keyVals) {
-    Map<String, String> replaced = new LinkedHashMap<String, String>();
-    for (Entry<String, String> keyVal : keyVals.entrySet()) {
-      String value = replaceAlias(keyVal.getValue());
-      replaced.put(keyVal.getKey(), value);
+  private synchronized void reloadChanged(List<File> configs,
+    List<File> deleted, boolean sourcesChanged) {
+
+    if (configs.isEmpty() && deleted.isEmpty() && !sourcesChanged) {
+      return;
+    }
+    long start = System.nanoTime();
+
+    // build the changes off to the side on a copy of the current assets
+    AssetSnapshot current = snapshot;
+    AssetSnapshot.Builder builder = new AssetSnapshot.Builder(current);
+
+    // remove the assets of deleted configs, a deleted global config takes
+    // its aliases with it
+    for (File config : deleted) {
+      LOG.info("Asset config deleted, unloading: " + config.getPath());
+      removeResource(config);
+      fileModTimes.remove(config.getPath());
+      builder.removeFile(config.getPath());
+      if (StringUtils.equals(config.getName(), GLOBAL_FILE)) {
+        builder.setAliases(new HashMap<String, String>());
+      }
+    }
+
+    for (File config : configs) {
+      LOG.info("Asset config changed, reloading: " + config.getPath());
+    }
+    applyConfigFiles(builder, parseAssetConfigFiles(configs));
+
+    // keep the cached fragments of anything that didn't change, changed
+    // embed, inlined, bundled, or fingerprinted files could be in any of them
+    AssetCache cache = null;
+    if (sourcesChanged || builder.isGlobalChanged()) {
+      if (sourcesChanged) {
+        LOG.info("Embed, bundle, or fingerprinted sources changed, "
+          + "clearing cache");
+      }
+      cache = current.getCache().emptyCopy();
+    }
+    else {
+      cache = current.getCache().copyExcept(builder.getChangedTargets());
+    }
+
+    publish(builder.build(cache));
+    if (metrics != null) {
+      metrics.reloaded(configs.size() + deleted.size(), System.nanoTime()
+        - start);
     }
-    return replaced;
   }
 
-  private String getMessage(String property, Locale locale) {
-    try {
-      return messageSource.getMessage(property, new Object[0], locale);
+  private void publish(AssetSnapshot next) {
+
+    // pre-resolve messages and pre-render fragments before readers can see
+    // the new assets, then swap
+    resolveMessages(next);
+    if (integrityIndex != null) {
+      digestReferencedFiles(next);
     }
-    catch (NoSuchMessageException e) {
-      return property;
+    compileFragments(next);
+    snapshot = next;
+    if (metrics != null) {
+      metrics.setCaches(next.getCache(), next.getRoutes());
+    }
+    if (integrityIndex != null) {
+      integrityIndex.save();
     }
   }
 
-  private String getEmbeddedSource(String embedPath) {
+  private void addReferencedFiles(Map targetAssets, Locale locale,
+    Set<File> files) {
 
-    if (StringUtils.isNotBlank(embedPath)) {
-      File embedFile = new File(rootDir + File.separator + embedPath);
-      if (embedFile.exists()) {
-        String source = null;
-        try {
-          source = FileUtils.readFileToString(embedFile);
+    if (targetAssets == null) {
+      return;
+    }
+    for (String type : new String[] {SCRIPTS, LINKS}) {
+      List<Map<String, String>> attrsList = (List<Map<String, String>>)targetAssets
+        .get(type);
+      if (attrsList == null) {
+        continue;
+      }
+      for (Map<String, String> attrs : attrsList) {
+        if (StringUtils.equals(type, LINKS)
+          && !isIntegrityRel(getMessage(attrs.get("rel"), locale))) {
+          continue;
         }
-        catch (IOException e) {
-          LOG.error("Error reading embed resource: " + embedFile.getPath(), e);
+        String url = getUrl(type, attrs, locale);
+        if (AssetBundler.isLocalUrl(url)) {
+          files.add(integrityIndex.getFile(StringUtils.substringBefore(
+            StringUtils.substringBefore(url, "?"), "#")));
         }
-        return source;
       }
     }
-    return "";
   }
 
-  private Map<String, String> getFieldValueMap(JsonNode root) {
-    Map<String, String> attrMap = new LinkedHashMap<String, String>();
-    for (String fieldname : JsonUtils.getFieldNames(root)) {
-      String value = JsonUtils.getStringValue(root, fieldname);
-      if (StringUtils.isNotBlank(value)) {
-        attrMap.put(fieldname, value);
+  private void digestReferencedFiles(AssetSnapshot target) {
+
+    // every local file the tags reference is digested up front on the load
+    // threads, so rendering finds the digests already computed
+    Locale[] fileLocales = (locales != null && locales.length > 0) ? locales
+      : new Locale[] {Locale.getDefault()};
+    Set<File> files = new LinkedHashSet<File>();
+    for (Locale locale : fileLocales) {
+      for (Map targetAssets : target.getAssets().values()) {
+        addReferencedFiles(targetAssets, locale, files);
+      }
+      for (Map targetAssets : target.getNamedAssets().values()) {
+        addReferencedFiles(targetAssets, locale, files);
       }
     }
-    return attrMap;
+    integrityIndex.digestAll(files, loadThreads);
   }
 
-  private void loadAliases(JsonNode asset) {
-    aliases.putAll(getFieldValueMap(asset.get("aliases")));
+  private void queueMessageReload(Set<String> codes) {
+
+    // changes are merged while a reload is waiting, so a burst of changed
+    // bundle files renders the affected fragments once
+    synchronized (pendingCodes) {
+      if (codes == null) {
+        pendingAllCodes = true;
+      }
+      else {
+        pendingCodes.addAll(codes);
+      }
+      if (messageReloadQueued) {
+        return;
+      }
+      messageReloadQueued = true;
+    }
+
+    try {
+      messageReloader.execute(new Runnable() {
+
+        @Override
+        public void run() {
+          Set<String> reloadCodes = null;
+          synchronized (pendingCodes) {
+            if (!pendingAllCodes) {
+              reloadCodes = new HashSet<String>(pendingCodes);
+            }
+            pendingCodes.clear();
+            pendingAllCodes = false;
+            messageReloadQueued = false;
+          }
+          reloadMessages(reloadCodes);
+        }
+      });
+    }
+    catch (RejectedExecutionException e) {
+      // shutting down, nothing left to render
+    }
   }
 
-  private void loadAsset(JsonNode asset, boolean isGlobal) {
+  private synchronized void reloadMessages(Set<String> codes) {
 
-    // map to hold the configuration for the url or global
-    Map<String, Object> curAssets = new LinkedHashMap<String, Object>();
+    // only fragments using a changed message are rendered again, global
+    // assets are part of every path fragment
+    AssetSnapshot current = snapshot;
+    AssetCache cache = null;
+    if (codes == null) {
+      cache = current.getCache().emptyCopy();
+    }
+    else {
+      Set<String> targets = new HashSet<String>();
+      addMessageTargets(current.getAssets(), codes, targets);
+      addMessageTargets(current.getNamedAssets(), codes, targets);
+      if (targets.isEmpty()) {
+        return;
+      }
+      if (targets.contains(GLOBAL)) {
+        cache = current.getCache().emptyCopy();
+      }
+      else {
+        cache = current.getCache().copyExcept(targets);
+      }
+      LOG.info("Messages changed, rendering " + targets.size()
+        + " assets again");
+    }
+    publish(new AssetSnapshot.Builder(current).build(cache));
+  }
 
-    // get all paths
-    List<String> paths = new ArrayList<String>();
-    if (asset.has("paths")) {
-      JsonNode pathsNode = asset.get("paths");
-      paths = JsonUtils.getStringValues(pathsNode);
+  private List<File> getModifiedConfigs() {
+
+    // loop through the files checking for updated modified times
+    List<File> configs = new ArrayList<File>();
+    for (Entry<String, Long> fileMod : fileModTimes.entrySet()) {
+      File config = new File(fileMod.getKey());
+      if (config.exists() && (config.lastModified() > fileMod.getValue())) {
+        configs.add(config);
+      }
     }
+    return configs;
+  }
 
-    String title = JsonUtils.getStringValue(asset, "title");
-    String name = JsonUtils.getStringValue(asset, "name");
-    boolean isNamed = StringUtils.isNotBlank(name);
+  private boolean invalidateSource(String path) {
 
-    // if no path and not global and not named then ignore
-    if (paths.isEmpty() && !isGlobal && !isNamed) {
-      return;
+    // a file can be embedded or inlined, bundled, and fingerprinted
+    boolean invalidated = embedSources.invalidate(path);
+    invalidated |= inlineSources.invalidate(path);
+    if (bundler != null) {
+      invalidated |= bundler.invalidate(path);
+    }
+    if (fingerprinter != null) {
+      invalidated |= fingerprinter.invalidate(path);
+    }
+    if (integrityIndex != null) {
+      invalidated |= integrityIndex.invalidate(path);
     }
 
-    // add the title if any
-    if (StringUtils.isNotBlank(title)) {
-      curAssets.put("title", replaceAlias(title));
+    // files behind restored fragments aren't in the stores until rendered
+    // again, a change to any of them renders everything
+    String key = AssetSnapshotFile.getKey(new File(path));
+    if (restoredSources.remove(key) != null) {
+      restoredSources.clear();
+      invalidated = true;
     }
 
-    // loop through the meta tag configurations
-    if (asset.has("meta")) {
-      List<Map<String, String>> metas = new ArrayList<Map<String, String>>();
-      for (JsonNode meta : asset.get("meta")) {
-        Map<String, String> fieldMap = replaceAliases(getFieldValueMap(meta));
-        if (fieldMap.size() > 0) {
-          metas.add(fieldMap);
-        }
-      }
+    // served files are read again on next request, no tags change
+    if (staticAssets != null) {
+      staticAssets.invalidate(path);
+    }
+    return invalidated;
+  }
 
-      // add meta list to asset map if anything to add
-      if (metas.size() > 0) {
-        curAssets.put(METAS, metas);
+  private boolean checkSourcesModified() {
+    boolean modified = !embedSources.checkModified().isEmpty();
+    modified |= !inlineSources.checkModified().isEmpty();
+    if (bundler != null) {
+      modified |= !bundler.checkModified().isEmpty();
+    }
+    if (fingerprinter != null) {
+      modified |= !fingerprinter.checkModified().isEmpty();
+    }
+    if (integrityIndex != null) {
+      modified |= !integrityIndex.checkModified().isEmpty();
+    }
+    for (AssetSnapshotFile.SourceStamp source : restoredSources.values()) {
+      if (source.isModified()) {
+        restoredSources.clear();
+        modified = true;
+        break;
       }
     }
+    if (staticAssets != null) {
+      staticAssets.checkModified();
+    }
+    return modified;
+  }
 
-    // loop through the scripts
-    if (asset.has("scripts")) {
-      List<Map<String, String>> scripts = new ArrayList<Map<String, String>>();
-      for (JsonNode script : asset.get("scripts")) {
+  private void reloadModified() {
+    reloadChanged(getModifiedConfigs(), new ArrayList<File>(),
+      checkSourcesModified());
+  }
 
-        // scripts can be shorthand of just the href, and can be an alias
-        Map<String, String> fieldMap = null;
-        if (script instanceof TextNode) {
+  private void resolvePatternRoot()
+    throws IOException {
 
-          String src = ((TextNode)script).getValueAsText();
-          src = replaceAlias(src);
-          fieldMap = new LinkedHashMap<String, String>();
-          fieldMap.put("type", "text/javascript");
-          fieldMap.put("src", src);
-        }
-        else {
-          fieldMap = replaceAliases(getFieldValueMap(script));
-        }
+    // split the pattern into a root directory and the pattern below it, for
+    // example /WEB-INF/assets/ and **/*-assets.json
+    int wildcard = StringUtils.indexOfAny(resourcePattern, "*?{");
+    if (wildcard < 0) {
+      wildcard = resourcePattern.length();
+    }
+    int rootEnd = resourcePattern.lastIndexOf('/', wildcard) + 1;
+    String rootLocation = resourcePattern.substring(0, rootEnd);
+    patternSubPath = resourcePattern.substring(rootEnd);
+    patternRoot = getResourcePatternResolver().getResource(rootLocation)
+      .getFile();
+  }
 
-        if (fieldMap.size() > 0) {
-          scripts.add(fieldMap);
+  private ResourcePatternResolver getResourcePatternResolver() {
+    if (resourceLoader != null) {
+      return ResourcePatternUtils.getResourcePatternResolver(resourceLoader);
+    }
+    return new PathMatchingResourcePatternResolver();
+  }
+
+  private boolean matchesResourcePattern(File file) {
+
+    if (patternRoot == null) {
+      return false;
+    }
+
+    // match the path below the pattern root against the rest of the pattern
+    String rootPath = patternRoot.getAbsolutePath() + File.separator;
+    String filePath = file.getAbsolutePath();
+    if (!filePath.startsWith(rootPath)) {
+      return false;
+    }
+    String relativePath = filePath.substring(rootPath.length()).replace(
+      File.separatorChar, '/');
+    return pathMatcher.match(patternSubPath, relativePath);
+  }
+
+  private void snapshotPatternDirectories(File dir, Map<String, Long> modTimes) {
+
+    // directory modified times change when entries are added or removed
+    modTimes.put(dir.getPath(), dir.lastModified());
+    File[] children = dir.listFiles();
+    if (children != null) {
+      for (File child : children) {
+        if (child.isDirectory()) {
+          snapshotPatternDirectories(child, modTimes);
         }
       }
+    }
+  }
+
+  private boolean patternDirectoriesChanged() {
 
-      // add script list to asset map if anything to add
-      if (scripts.size() > 0) {
-        curAssets.put(SCRIPTS, scripts);
+    if (patternRoot == null) {
+      return false;
+    }
+    for (Entry<String, Long> dirMod : dirModTimes.entrySet()) {
+      File dir = new File(dirMod.getKey());
+      if (dir.lastModified() != dirMod.getValue()) {
+        return true;
       }
     }
+    return false;
+  }
 
-    if (asset.has("links")) {
-      List<Map<String, String>> links = new ArrayList<Map<String, String>>();
-      for (JsonNode link : asset.get("links")) {
+  private void rescanResources() {
 
-        // scripts can be shorthand of just the href, and can be an alias
-        Map<String, String> fieldMap = null;
-        if (link instanceof TextNode) {
+    // without a pattern there is nothing new to find
+    if (resourcePattern == null) {
+      reloadModified();
+      return;
+    }
 
-          String href = ((TextNode)link).getValueAsText();
-          href = replaceAlias(href);
-          fieldMap = new LinkedHashMap<String, String>();
-          fieldMap.put("rel", "stylesheet");
-          fieldMap.put("type", "text/css");
-          fieldMap.put("href", href);
-        }
-        else {
-          fieldMap = replaceAliases(getFieldValueMap(link));
+    Resource[] found = null;
+    try {
+      found = getResourcePatternResolver().getResources(resourcePattern);
+    }
+    catch (IOException e) {
+      LOG.error("Error resolving asset configs: " + resourcePattern, e);
+      return;
+    }
+
+    // anything not already loaded is new, anything loaded and not found
+    // again has been deleted
+    List<File> configs = getModifiedConfigs();
+    Set<String> foundPaths = new HashSet<String>();
+    for (Resource resource : found) {
+      try {
+        File config = resource.getFile();
+        foundPaths.add(config.getPath());
+        if (!fileModTimes.containsKey(config.getPath())) {
+          LOG.info("Asset config added: " + config.getPath());
+          configs.add(config);
         }
+      }
+      catch (IOException e) {
+        // do nothing, continue with other files
+      }
+    }
+    List<File> deleted = new ArrayList<File>();
+    for (String configPath : fileModTimes.keySet()) {
+      if (!foundPaths.contains(configPath)) {
+        deleted.add(new File(configPath));
+      }
+    }
+
+    setResources(found);
+    if (patternRoot != null) {
+      Map<String, Long> modTimes = new HashMap<String, Long>();
+      snapshotPatternDirectories(patternRoot, modTimes);
+      dirModTimes = modTimes;
+    }
+
+    reloadChanged(configs, deleted, checkSourcesModified());
+  }
+
+  private synchronized void addResource(File config) {
+    List<Resource> updated = new ArrayList<Resource>();
+    if (resources != null) {
+      updated.addAll(Arrays.asList(resources));
+    }
+    updated.add(new FileSystemResource(config));
+    setResources(updated.toArray(new Resource[updated.size()]));
+  }
 
-        if (fieldMap.size() > 0) {
-          links.add(fieldMap);
+  private synchronized void removeResource(File config) {
+    List<Resource> updated = new ArrayList<Resource>();
+    for (Resource resource : (resources != null ? resources : new Resource[0])) {
+      try {
+        if (!StringUtils.equals(resource.getFile().getPath(), config.getPath())) {
+          updated.add(resource);
         }
       }
+      catch (IOException e) {
+        updated.add(resource);
+      }
+    }
+    setResources(updated.toArray(new Resource[updated.size()]));
+  }
+
+  private void startWatcher()
+    throws IOException {
 
-      // add links list to asset map if anything to add
-      if (links.size() > 0) {
-        curAssets.put(LINKS, links);
+    // watch the directories holding the configs and any embed, inlined,
+    // bundled, or fingerprinted files already loaded, new directories are
+    // added as files are read
+    watcher = new FileWatcher(new AssetChangeListener(), watchDebounce);
+    if (patternRoot != null) {
+      watcher.watchDirectory(patternRoot, true);
+    }
+    for (String configPath : fileModTimes.keySet()) {
+      watcher.watchDirectory(new File(configPath).getParentFile(), false);
+    }
+    for (String embedPath : embedSources.getPaths()) {
+      watcher.watchDirectory(new File(embedPath).getParentFile(), false);
+    }
+    for (String inlinePath : inlineSources.getPaths()) {
+      watcher.watchDirectory(new File(inlinePath).getParentFile(), false);
+    }
+    if (bundler != null) {
+      for (String sourcePath : bundler.getPaths()) {
+        watcher.watchDirectory(new File(sourcePath).getParentFile(), false);
+      }
+    }
+    if (fingerprinter != null) {
+      for (String sourcePath : fingerprinter.getPaths()) {
+        watcher.watchDirectory(new File(sourcePath).getParentFile(), false);
+      }
+    }
+    if (integrityIndex != null) {
+      for (String sourcePath : integrityIndex.getPaths()) {
+        watcher.watchDirectory(new File(sourcePath).getParentFile(), false);
       }
     }
+    if (staticAssets != null) {
+      for (String sourcePath : staticAssets.getPaths()) {
+        watcher.watchDirectory(new File(sourcePath).getParentFile(), false);
+      }
+    }
+    for (String sourcePath : restoredSources.keySet()) {
+      watcher.watchDirectory(new File(sourcePath).getParentFile(), false);
+    }
+    watcher.start("asset-watcher");
+  }
 
-    // add the current assets as either global or for a specific path
-    if (curAssets.size() > 0) {
+  private void addMessageCodes(Map targetAssets, Set<String> codes) {
 
-      // setup as global, path, or named resources
-      if (isGlobal) {
-        assets.put(GLOBAL, curAssets);
-        if (caching) {
-          scriptsCache.clear();
-          metaCache.clear();
-          linksCache.clear();
-          titleCache.clear();
+    // every string that could be a message, titles and attribute names and
+    // values, most are literals which resolve to themselves
+    if (targetAssets == null) {
+      return;
+    }
+    String title = (String)targetAssets.get(TITLE);
+    if (StringUtils.isNotBlank(title)) {
+      codes.add(title);
+    }
+    for (String type : ASSET_TYPES) {
+      if (!StringUtils.equals(type, TITLE)) {
+        List<Map> attrsList = (List<Map>)targetAssets.get(type);
+        if (attrsList != null) {
+          for (Map<String, String> attrs : attrsList) {
+            codes.addAll(attrs.keySet());
+            codes.addAll(attrs.values());
+          }
         }
       }
-      else if (isNamed) {
-        namedAssets.put(name, curAssets);
-        if (caching) {
-          scriptsCache.remove(name);
-          metaCache.remove(name);
-          linksCache.remove(name);
-          titleCache.remove(name);
-        }
+    }
+  }
+
+  private void addMessageTargets(Map<String, Map<String, Object>> assets,
+    Set<String> codes, Set<String> targets) {
+    for (Entry<String, Map<String, Object>> assetEntry : assets.entrySet()) {
+      Set<String> assetCodes = new HashSet<String>();
+      addMessageCodes(assetEntry.getValue(), assetCodes);
+      assetCodes.retainAll(codes);
+      if (!assetCodes.isEmpty()) {
+        targets.add(assetEntry.getKey());
       }
-      else {
-        for (String path : paths) {
-          assets.put(path, curAssets);
-          if (caching) {
-            scriptsCache.remove(path);
-            metaCache.remove(path);
-            linksCache.remove(path);
-            titleCache.remove(path);
+    }
+  }
+
+  private static PatternReloadableResourceBundleMessageSource findChangeSource(
+    MessageSource source) {
+
+    // an application context sets itself as the message source, the bean it
+    // delegates to, or a parent, is the one that can report changes
+    Set<MessageSource> seen = new HashSet<MessageSource>();
+    while (source != null && seen.add(source)) {
+      if (source instanceof PatternReloadableResourceBundleMessageSource) {
+        return (PatternReloadableResourceBundleMessageSource)source;
+      }
+      MessageSource next = null;
+      if (source instanceof ApplicationContext) {
+        ApplicationContext context = (ApplicationContext)source;
+        String beanName = AbstractApplicationContext.MESSAGE_SOURCE_BEAN_NAME;
+        if (context.containsLocalBean(beanName)) {
+          Object bean = context.getBean(beanName);
+          if (bean instanceof MessageSource && bean != context) {
+            next = (MessageSource)bean;
           }
         }
+        if (next == null) {
+          next = context.getParent();
+        }
+      }
+      else if (source instanceof HierarchicalMessageSource) {
+        next = ((HierarchicalMessageSource)source).getParentMessageSource();
+      }
+      source = next;
+    }
+    return null;
+  }
+
+  private Map<String, String> getMessageTable(Locale locale) {
+
+    // tables are kept only for the configured locales, and only when every
+    // change to the messages is reported, any other locale, such as one
+    // straight from a request, is resolved from the message source each time
+    Locale tableLocale = (locale != null) ? locale : Locale.getDefault();
+    if (!messageTablesEnabled || !tableLocales.contains(tableLocale)) {
+      return null;
+    }
+    Map<String, String> messageTable = messageTables.get(tableLocale);
+    if (messageTable == null) {
+      messageTable = new ConcurrentHashMap<String, String>();
+      Map<String, String> existing = messageTables.putIfAbsent(tableLocale,
+        messageTable);
+      if (existing != null) {
+        messageTable = existing;
+      }
+    }
+    return messageTable;
+  }
+
+  private String resolveMessage(String property, Locale locale) {
+
+    // the property is its own default so a literal doesn't throw
+    String message = messageSource.getMessage(property, null, property,
+      locale);
+    return (message != null) ? message.intern() : property;
+  }
+
+  private Set<String> getMessageCodes(AssetSnapshot target) {
+    Set<String> codes = new HashSet<String>();
+    for (Map targetAssets : target.getAssets().values()) {
+      addMessageCodes(targetAssets, codes);
+    }
+    for (Map targetAssets : target.getNamedAssets().values()) {
+      addMessageCodes(targetAssets, codes);
+    }
+    codes.remove(null);
+    return codes;
+  }
+
+  private void resolveMessages(AssetSnapshot target) {
+
+    // resolve every message once per locale at load time so rendering is a
+    // table lookup, already resolved messages are kept
+    if (messageSource == null || !messageTablesEnabled || locales == null
+      || locales.length == 0) {
+      return;
+    }
+    Set<String> codes = getMessageCodes(target);
+    for (Locale locale : locales) {
+      Map<String, String> messageTable = getMessageTable(locale);
+      for (String code : codes) {
+        if (!messageTable.containsKey(code)) {
+          messageTable.put(code, resolveMessage(code, locale));
+        }
+      }
+    }
+  }
+
+  private String getMessage(String property, Locale locale) {
+
+    if (StringUtils.isBlank(property) || messageSource == null) {
+      return property;
+    }
+
+    // anything not resolved at load time, such as dynamic assets, is
+    // resolved on first use and remembered while the table has room
+    Map<String, String> messageTable = getMessageTable(locale);
+    if (messageTable == null) {
+      return resolveMessage(property, locale);
+    }
+    String message = messageTable.get(property);
+    if (message == null) {
+      message = resolveMessage(property, locale);
+      if (messageTable.size() < cacheSize) {
+        messageTable.put(property, message);
       }
     }
+    return message;
   }
 
-  private void loadAssetConfigFile(File assetConfigFile) {
+  private String getEmbeddedSource(String embedPath) {
+
+    // embed files are read once and then served from memory
+    if (StringUtils.isNotBlank(embedPath)) {
+      File embedFile = new File(rootDir + File.separator + embedPath);
+      watchSourceDirectory(embedFile);
+      return embedSources.getSource(embedFile);
+    }
+    return "";
+  }
+
+  private String getInlineSource(String type, Map<String, String> attrs,
+    Locale locale) {
+
+    // local scripts and stylesheets under the threshold are written into the
+    // page, larger files are remembered without their source so they are
+    // inlined if they shrink
+    if (inlineThreshold <= 0
+      || !StringUtils.equalsIgnoreCase(attrs.get(AssetConfig.INLINE),
+        AssetConfig.INLINE_AUTO)) {
+      return null;
+    }
+    if (StringUtils.equals(type, LINKS)
+      && !StringUtils.equalsIgnoreCase(getMessage(attrs.get("rel"), locale),
+        "stylesheet")) {
+      return null;
+    }
+    String url = getUrl(type, attrs, locale);
+    if (!AssetBundler.isLocalUrl(url)) {
+      return null;
+    }
+    String path = StringUtils.substringBefore(StringUtils.substringBefore(
+      url, "?"), "#");
+    File inlineFile = new File(rootDir + File.separator + path);
+    watchSourceDirectory(inlineFile);
+    String source = inlineSources.getSource(inlineFile, inlineThreshold);
+    if (source == null) {
+      return null;
+    }
+
+    // a closing tag in the source would end the block early
+    String closeTag = StringUtils.equals(type, SCRIPTS) ? "</script"
+      : "</style";
+    if (StringUtils.containsIgnoreCase(source, closeTag)) {
+      LOG.warn("Unable to inline source containing " + closeTag + ": " + url);
+      return null;
+    }
+    source = StringUtils.trim(source);
+    return StringUtils.equals(type, LINKS) ? AssetBundler.rewriteCssUrls(
+      source, path) : source;
+  }
+
+  private void watchSourceDirectory(File sourceFile) {
+
+    FileWatcher curWatcher = watcher;
+    File sourceDir = sourceFile.getAbsoluteFile().getParentFile();
+    if (curWatcher != null && !curWatcher.isWatching(sourceDir)) {
+      try {
+        curWatcher.watchDirectory(sourceDir, false);
+      }
+      catch (IOException e) {
+        LOG.error("Error watching source directory: " + sourceDir.getPath(), e);
+      }
+    }
+  }
+
+  private AssetConfigFile parseAssetConfigFile(File assetConfigFile) {
 
     // don't do anything if config file doesn't exist
     if (!assetConfigFile.exists()) {
       LOG.warn("Asset config file doesn't exist: " + assetConfigFile.getPath()
         + ", ignoring it");
-      return;
+      return null;
     }
 
     // set the last modified for the file before parsing in case of errors
@@ -309,54 +894,479 @@ public class ReloadableAssetManager
     fileModTimes.put(configFilename, assetConfigFile.lastModified());
 
     try {
+      boolean isGlobal = StringUtils.equals(assetConfigFile.getName(),
+        GLOBAL_FILE);
+      return configParser.parse(assetConfigFile, isGlobal);
+    }
+    catch (JsonProcessingException e) {
+
+      // report where in the file the config is broken
+      JsonLocation location = e.getLocation();
+      if (location != null) {
+        LOG.error("Error while parsing assets: " + configFilename
+          + " at line " + location.getLineNr() + ", column "
+          + location.getColumnNr(), e);
+      }
+      else {
+        LOG.error("Error while parsing assets: " + configFilename, e);
+      }
+    }
+    catch (Exception e) {
+      LOG.error("Error while parsing assets: " + configFilename, e);
+    }
+    if (metrics != null) {
+      metrics.parseFailed(configFilename);
+    }
+    return null;
+  }
 
-      // processing global file or content file
-      String filename = assetConfigFile.getName();
-      boolean isGlobal = StringUtils.equals(filename, GLOBAL_FILE);
-      ObjectMapper mapper = new ObjectMapper();
-      JsonNode root = mapper.readValue(assetConfigFile, JsonNode.class);
+  private List<AssetConfigFile> parseAssetConfigFiles(List<File> configs) {
 
-      // global then load aliases
-      if (isGlobal) {
-        loadAliases(root);
+    List<AssetConfigFile> parsed = new ArrayList<AssetConfigFile>();
+    if (loadThreads <= 1 || configs.size() <= 1) {
+      for (File config : configs) {
+        AssetConfigFile configFile = parseAssetConfigFile(config);
+        if (configFile != null) {
+          parsed.add(configFile);
+        }
       }
+      return parsed;
+    }
+
+    // parse on a bounded pool, keeping the results in resource order
+    int numThreads = Math.min(loadThreads, configs.size());
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads,
+      new ThreadFactory() {
 
-      // assets config files can hold one or more assets
-      if (root instanceof ArrayNode) {
-        for (JsonNode asset : root) {
-          loadAsset(asset, false);
+        private AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "asset-loader-"
+            + count.incrementAndGet());
+          thread.setDaemon(true);
+          return thread;
         }
+      });
+
+    try {
+      List<Future<AssetConfigFile>> futures = new ArrayList<Future<AssetConfigFile>>();
+      for (final File config : configs) {
+        futures.add(executor.submit(new Callable<AssetConfigFile>() {
+
+          @Override
+          public AssetConfigFile call() {
+            return parseAssetConfigFile(config);
+          }
+        }));
       }
-      else {
-        loadAsset(root, isGlobal);
+      for (Future<AssetConfigFile> future : futures) {
+        try {
+          AssetConfigFile configFile = future.get();
+          if (configFile != null) {
+            parsed.add(configFile);
+          }
+        }
+        catch (ExecutionException e) {
+          LOG.error("Error while parsing assets", e.getCause());
+        }
       }
     }
-    catch (Exception e) {
-      LOG.error("Error while parsing assets: " + configFilename, e);
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
     }
+    finally {
+      executor.shutdown();
+    }
+
+    return parsed;
   }
 
-  private void loadAllAssetConfigFiles() {
+  private void applyConfigFiles(AssetSnapshot.Builder builder,
+    List<AssetConfigFile> configFiles) {
+
+    // global first, a change in aliases re-resolves only the assets using the
+    // changed aliases without reading their files again
+    for (AssetConfigFile configFile : configFiles) {
+      if (configFile.isGlobal()) {
+        int numResolved = builder.setAliases(configFile.getAliases());
+        if (numResolved > 0) {
+          LOG.info("Aliases changed, re-resolved " + numResolved
+            + " asset configs");
+        }
+        builder.putFile(configFile.getPath(), configFile.getConfigs());
+      }
+    }
+    for (AssetConfigFile configFile : configFiles) {
+      if (!configFile.isGlobal()) {
+        builder.putFile(configFile.getPath(), configFile.getConfigs());
+      }
+    }
+  }
 
-    // loop through resources to load asset configs
+  private List<File> getResourceFiles() {
+    List<File> configs = new ArrayList<File>();
     for (Resource resource : resources) {
       try {
-        File assetConfigFile = resource.getFile();
-        LOG.info("Loading asset config: " + assetConfigFile.getPath());
-        loadAssetConfigFile(assetConfigFile);
+        configs.add(resource.getFile());
       }
       catch (Exception e) {
         // do nothing, continue with other files
       }
     }
+    return configs;
+  }
+
+  private synchronized void loadAllAssetConfigFiles() {
+
+    // loop through resources to load asset configs, starting from nothing
+    // so removed aliases and assets don't linger
+    List<File> configs = getResourceFiles();
+    for (File assetConfigFile : configs) {
+      LOG.info("Loading asset config: " + assetConfigFile.getPath());
+    }
+
+    long start = System.nanoTime();
+    AssetSnapshot.Builder builder = new AssetSnapshot.Builder();
+    applyConfigFiles(builder, parseAssetConfigFiles(configs));
+    publish(builder.build(snapshot.getCache().emptyCopy()));
+    if (metrics != null) {
+      metrics.reloaded(configs.size(), System.nanoTime() - start);
+    }
+  }
+
+  private String getSnapshotSettings() {
+
+    // every setting that changes what is rendered, a snapshot saved under
+    // other settings is never used
+    return StringUtils.join(new Object[] {rootDir, bundling, minify,
+      bundleDir, fingerprinting, fingerprintStyle, serveAssets,
+      inlineThreshold, scriptLoad, integrity, cacheSize,
+      Arrays.toString(locales)}, '|');
+  }
+
+  private boolean isMessageCurrent(Locale locale, String code, String message) {
+    return StringUtils.equals(resolveMessage(code, locale), message);
+  }
+
+  private synchronized boolean restoreSnapshot() {
+
+    long start = System.nanoTime();
+    AssetSnapshotFile.Contents contents = null;
+    try {
+      contents = snapshotStore.read(AssetSnapshotFile.hashInputs(
+        getResourceFiles(), getSnapshotSettings()));
+    }
+    catch (IOException e) {
+      LOG.warn("Unable to hash asset configs, loading them", e);
+    }
+    if (contents == null) {
+      return false;
+    }
+
+    // any embed, inlined, bundled, fingerprinted, or digested file changed
+    // since the snapshot was saved could be in any fragment
+    for (AssetSnapshotFile.SourceStamp source : contents.getSources()
+      .values()) {
+      if (source.isModified()) {
+        LOG.info("Asset snapshot source changed: "
+          + source.getFile().getPath() + ", loading asset configs");
+        return false;
+      }
+    }
+
+    // messages live outside the configs so each one is resolved again, the
+    // snapshot is only used if every message is the same
+    if (messageSource != null) {
+      for (Entry<Locale, Map<String, String>> table : contents.getMessages()
+        .entrySet()) {
+        for (Entry<String, String> message : table.getValue().entrySet()) {
+          if (!isMessageCurrent(table.getKey(), message.getKey(), message
+            .getValue())) {
+            LOG.info("Asset snapshot message changed: " + message.getKey()
+              + ", loading asset configs");
+            return false;
+          }
+        }
+      }
+      for (Entry<Locale, Map<String, String>> table : contents.getMessages()
+        .entrySet()) {
+        Map<String, String> messageTable = getMessageTable(table.getKey());
+        if (messageTable != null) {
+          messageTable.putAll(table.getValue());
+        }
+      }
+    }
+
+    // the parsed configs are applied as if read from their files, and the
+    // rendered fragments are cached so publishing only renders what's missing
+    for (File config : getResourceFiles()) {
+      if (config.exists()) {
+        fileModTimes.put(config.getPath(), config.lastModified());
+      }
+    }
+    AssetSnapshot.Builder builder = new AssetSnapshot.Builder();
+    applyConfigFiles(builder, contents.getConfigFiles());
+    AssetCache cache = snapshot.getCache().emptyCopy();
+    for (Entry<AssetCache.Key, AssetFragment> fragment : contents
+      .getFragments().entrySet()) {
+      cache.put(fragment.getKey(), fragment.getValue());
+    }
+
+    // fragments carry fingerprints and served urls the stores must know, and
+    // the files behind them are watched like any other source
+    restoredSources.putAll(contents.getSources());
+    if (fingerprinter != null) {
+      for (Entry<String, String> hash : contents.getFingerprints().entrySet()) {
+        AssetSnapshotFile.SourceStamp source = contents.getSources().get(
+          hash.getKey());
+        if (source != null) {
+          fingerprinter.restoreHash(hash.getKey(), hash.getValue(), source
+            .getLastModified(), source.getLength());
+        }
+      }
+    }
+    if (staticAssets != null) {
+      for (String url : contents.getServedUrls()) {
+        staticAssets.addUrl(url);
+      }
+    }
+
+    publish(builder.build(cache));
+    savedSnapshot = snapshot;
+    savedSize = snapshot.getCache().size();
+    if (metrics != null) {
+      metrics.reloaded(contents.getConfigFiles().size(), System.nanoTime()
+        - start);
+    }
+    LOG.info("Restored " + contents.getFragments().size()
+      + " fragments from asset snapshot: "
+      + snapshotStore.getFile().getPath());
+    return true;
+  }
+
+  private void addSourceStamps(Set<String> paths,
+    Map<String, AssetSnapshotFile.SourceStamp> sources) {
+    for (String path : paths) {
+      File file = new File(path);
+      sources.put(AssetSnapshotFile.getKey(file),
+        new AssetSnapshotFile.SourceStamp(file));
+    }
+  }
+
+  private synchronized void saveSnapshot() {
+
+    // only a snapshot matching the files on disk is saved, anything changed
+    // and not yet reloaded waits for the next save
+    if (snapshotStore == null || !getModifiedConfigs().isEmpty()
+      || embedSources.hasModified() || inlineSources.hasModified()
+      || (bundler != null && bundler.hasModified())
+      || (fingerprinter != null && fingerprinter.hasModified())
+      || (integrityIndex != null && integrityIndex.hasModified())) {
+      return;
+    }
+    for (AssetSnapshotFile.SourceStamp source : restoredSources.values()) {
+      if (source.isModified()) {
+        return;
+      }
+    }
+
+    // nothing reloaded or rendered since the last save or restore
+    AssetSnapshot current = snapshot;
+    if (current == savedSnapshot && current.getCache().size() == savedSize) {
+      return;
+    }
+    AssetSnapshotFile.Contents contents = new AssetSnapshotFile.Contents();
+    for (Entry<String, List<AssetConfig>> fileConfig : current
+      .getFileConfigs().entrySet()) {
+      File config = new File(fileConfig.getKey());
+      boolean isGlobal = StringUtils.equals(config.getName(), GLOBAL_FILE);
+      Map<String, String> aliases = isGlobal ? current.getAliases()
+        : new HashMap<String, String>();
+      contents.getConfigFiles().add(
+        new AssetConfigFile(fileConfig.getKey(), isGlobal, aliases,
+          fileConfig.getValue()));
+    }
+    contents.getFragments().putAll(current.getCache().getEntries());
+
+    // every file a fragment was rendered from, stamped so a later start can
+    // tell it changed
+    Map<String, AssetSnapshotFile.SourceStamp> sources = contents
+      .getSources();
+    addSourceStamps(embedSources.getPaths(), sources);
+    addSourceStamps(inlineSources.getPaths(), sources);
+    if (bundler != null) {
+      addSourceStamps(bundler.getPaths(), sources);
+      addSourceStamps(bundler.getBundlePaths(), sources);
+    }
+    if (fingerprinter != null) {
+      addSourceStamps(fingerprinter.getPaths(), sources);
+      contents.getFingerprints().putAll(fingerprinter.getHashes());
+    }
+    if (integrityIndex != null) {
+      addSourceStamps(integrityIndex.getPaths(), sources);
+    }
+    addSourceStamps(restoredSources.keySet(), sources);
+    if (staticAssets != null) {
+      contents.getServedUrls().addAll(staticAssets.getUrls());
+    }
+    for (Entry<Locale, Map<String, String>> table : messageTables.entrySet()) {
+      contents.getMessages().put(table.getKey(),
+        new HashMap<String, String>(table.getValue()));
+    }
+
+    // without tables the messages the fragments were rendered with are
+    // resolved here, so a later start can still tell they changed
+    if (messageSource != null && !messageTablesEnabled && locales != null) {
+      Set<String> codes = getMessageCodes(current);
+      for (Locale locale : locales) {
+        Map<String, String> messages = new HashMap<String, String>();
+        for (String code : codes) {
+          messages.put(code, resolveMessage(code, locale));
+        }
+        contents.getMessages().put(locale, messages);
+      }
+    }
+
+    try {
+      contents.setInputsHash(AssetSnapshotFile.hashInputs(getResourceFiles(),
+        getSnapshotSettings()));
+      snapshotStore.write(contents);
+      savedSnapshot = current;
+      savedSize = contents.getFragments().size();
+      LOG.info("Saved " + contents.getFragments().size()
+        + " fragments to asset snapshot: "
+        + snapshotStore.getFile().getPath());
+    }
+    catch (IOException e) {
+      LOG.error("Error writing asset snapshot: "
+        + snapshotStore.getFile().getPath(), e);
+    }
+  }
+
+  private String getFileUrl(String url) {
+
+    if (!AssetBundler.isLocalUrl(url)
+      || (fingerprinter == null && staticAssets == null)) {
+      return url;
+    }
+
+    // local files can be served by the assets filter, and are watched so
+    // their served content and fingerprint stay current
+    String path = StringUtils.substringBefore(StringUtils.substringBefore(
+      url, "?"), "#");
+    watchSourceDirectory(new File(rootDir + File.separator + path));
+    if (staticAssets != null) {
+      staticAssets.addUrl(path);
+    }
+
+    // bundles are already named by their content
+    if (fingerprinter == null
+      || (bundler != null && url.startsWith(StringUtils.removeEnd(bundleDir,
+        "/") + "/"))) {
+      return url;
+    }
+    return fingerprinter.fingerprint(url);
+  }
+
+  private static boolean isFileRel(String rel) {
+
+    // only links to static files, a canonical or alternate link names a page
+    // and must stay as it is
+    for (String relType : StringUtils.split(StringUtils.lowerCase(StringUtils
+      .defaultString(rel)))) {
+      if (StringUtils.equals(relType, "stylesheet")
+        || StringUtils.equals(relType, "icon")
+        || StringUtils.equals(relType, "apple-touch-icon")
+        || StringUtils.equals(relType, "preload")
+        || StringUtils.equals(relType, "prefetch")
+        || StringUtils.equals(relType, "modulepreload")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static String getConfigType(String type) {
+
+    // footer scripts are the scripts configured to load in the footer
+    return StringUtils.equals(type, FOOTER_SCRIPTS) ? SCRIPTS : type;
+  }
+
+  private String getScriptLoad(String type, Map<String, String> attrs,
+    Locale locale) {
+
+    // the script's own load, set on it or its asset, then the default load
+    // for every script
+    if (!StringUtils.equals(type, SCRIPTS)) {
+      return null;
+    }
+    String load = getMessage(attrs.get(AssetConfig.LOAD), locale);
+    if (StringUtils.isBlank(load)) {
+      load = scriptLoad;
+    }
+    return StringUtils.lowerCase(StringUtils.trim(load));
+  }
+
+  private boolean isFooterScript(String type, Map<String, String> attrs,
+    Locale locale) {
+    return StringUtils.equals(getScriptLoad(type, attrs, locale),
+      AssetConfig.LOAD_FOOTER);
+  }
+
+  private static boolean isBooleanAttr(String attr) {
+    return StringUtils.equals(attr, "async")
+      || StringUtils.equals(attr, "defer")
+      || StringUtils.equals(attr, "nomodule");
+  }
+
+  private static boolean isIntegrityRel(String rel) {
+
+    // links whose fetches are checked against an integrity attribute
+    for (String relType : StringUtils.split(StringUtils.lowerCase(StringUtils
+      .defaultString(rel)))) {
+      if (StringUtils.equals(relType, "stylesheet")
+        || StringUtils.equals(relType, "preload")
+        || StringUtils.equals(relType, "modulepreload")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private String getIntegrity(Map<String, String> attrs, String url) {
+
+    // local files get a digest of their content unless one is configured,
+    // fingerprinted and served files have the same content
+    if (integrityIndex == null || attrs.containsKey("integrity")
+      || !AssetBundler.isLocalUrl(url)) {
+      return null;
+    }
+    File file = integrityIndex.getFile(StringUtils.substringBefore(
+      StringUtils.substringBefore(url, "?"), "#"));
+    watchSourceDirectory(file);
+    return integrityIndex.getIntegrity(file);
   }
 
   private String createScriptTag(Map<String, String> scriptAttrs, Locale locale) {
 
     StringBuilder scriptTagBuilder = new StringBuilder();
 
-    String type = scriptAttrs.get("type");
-    String src = getMessage(scriptAttrs.get("src"), locale);
+    // modules are loaded by their type, async and defer only apply to
+    // scripts with a src
+    String load = getScriptLoad(SCRIPTS, scriptAttrs, locale);
+    String type = getMessage(scriptAttrs.get("type"), locale);
+    if (StringUtils.equals(load, AssetConfig.LOAD_MODULE)) {
+      type = "module";
+    }
+    String inlineScript = getInlineSource(SCRIPTS, scriptAttrs, locale);
+    String src = null;
+    String integrityDigest = null;
+    if (inlineScript == null) {
+      String url = getMessage(scriptAttrs.get("src"), locale);
+      src = getFileUrl(url);
+      integrityDigest = getIntegrity(scriptAttrs, url);
+    }
     scriptTagBuilder.append("<script");
     if (StringUtils.isNotBlank(type)) {
       scriptTagBuilder.append(" type=\"" + type + "\"");
@@ -364,10 +1374,39 @@ public class ReloadableAssetManager
     if (StringUtils.isNotBlank(src)) {
       scriptTagBuilder.append(" src=\"" + src + "\"");
     }
+    if (integrityDigest != null) {
+      scriptTagBuilder.append(" integrity=\"" + integrityDigest + "\"");
+    }
+
+    // any other attributes as configured, boolean attributes are written
+    // without a value unless they are false
+    for (Entry<String, String> scriptAttr : scriptAttrs.entrySet()) {
+      String key = scriptAttr.getKey();
+      if (AssetConfig.isConfigAttr(key) || StringUtils.equals(key, "type")
+        || StringUtils.equals(key, "src") || StringUtils.equals(key, "embed")) {
+        continue;
+      }
+      String value = getMessage(scriptAttr.getValue(), locale);
+      if (!isBooleanAttr(key)) {
+        scriptTagBuilder.append(" " + key + "=\"" + value + "\"");
+      }
+      else if (!StringUtils.equalsIgnoreCase(value, "false")) {
+        scriptTagBuilder.append(" " + key);
+      }
+    }
+    if (StringUtils.isNotBlank(src)
+      && (StringUtils.equals(load, AssetConfig.LOAD_ASYNC) || StringUtils
+        .equals(load, AssetConfig.LOAD_DEFER))
+      && !scriptAttrs.containsKey(load)) {
+      scriptTagBuilder.append(" " + load);
+    }
     scriptTagBuilder.append(">");
 
     String embedScript = getMessage(scriptAttrs.get("embed"), locale);
-    if (StringUtils.isNotBlank(embedScript)) {
+    if (inlineScript != null) {
+      scriptTagBuilder.append("\n" + inlineScript + "\n");
+    }
+    else if (StringUtils.isNotBlank(embedScript)) {
       scriptTagBuilder.append("\n" + getEmbeddedSource(embedScript) + "\n");
     }
     scriptTagBuilder.append("</script>");
@@ -380,6 +1419,9 @@ public class ReloadableAssetManager
     StringBuilder metaTagBuilder = new StringBuilder();
     metaTagBuilder.append("<meta");
     for (Entry<String, String> metaAttr : metaAttrs.entrySet()) {
+      if (StringUtils.equals(metaAttr.getKey(), AssetConfig.AFTER)) {
+        continue;
+      }
       String key = getMessage(metaAttr.getKey(), locale);
       String value = getMessage(metaAttr.getValue(), locale);
       if (StringUtils.isNotBlank(key)) {
@@ -391,493 +1433,1045 @@ public class ReloadableAssetManager
     return metaTagBuilder.toString();
   }
 
+  private String createStyleTag(Map<String, String> linkAttrs,
+    String inlineStyle, Locale locale) {
+
+    // the stylesheet's media still applies to the inlined rules
+    StringBuilder styleTagBuilder = new StringBuilder();
+    String media = getMessage(linkAttrs.get("media"), locale);
+    styleTagBuilder.append("<style");
+    if (StringUtils.isNotBlank(media)) {
+      styleTagBuilder.append(" media=\"" + media + "\"");
+    }
+    styleTagBuilder.append(">\n" + inlineStyle + "\n</style>");
+    return styleTagBuilder.toString();
+  }
+
   private String createLinkTag(Map<String, String> linkAttrs, Locale locale) {
 
+    String inlineStyle = getInlineSource(LINKS, linkAttrs, locale);
+    if (inlineStyle != null) {
+      return createStyleTag(linkAttrs, inlineStyle, locale);
+    }
+
     StringBuilder linkTagBuilder = new StringBuilder();
 
+    String rel = getMessage(linkAttrs.get("rel"), locale);
+    boolean fileLink = isFileRel(rel);
     linkTagBuilder.append("<link");
     for (Entry<String, String> linkAttr : linkAttrs.entrySet()) {
+      if (AssetConfig.isConfigAttr(linkAttr.getKey())) {
+        continue;
+      }
       String key = getMessage(linkAttr.getKey(), locale);
       String value = getMessage(linkAttr.getValue(), locale);
+      if (fileLink && StringUtils.equals(key, "href")) {
+        value = getFileUrl(value);
+      }
       if (StringUtils.isNotBlank(key)) {
         linkTagBuilder.append(" " + key + "=\"");
       }
       linkTagBuilder.append(value + "\"");
     }
+    if (isIntegrityRel(rel)) {
+      String integrityDigest = getIntegrity(linkAttrs, getMessage(linkAttrs
+        .get("href"), locale));
+      if (integrityDigest != null) {
+        linkTagBuilder.append(" integrity=\"" + integrityDigest + "\"");
+      }
+    }
     linkTagBuilder.append(" />");
 
     return linkTagBuilder.toString();
   }
 
-  public ReloadableAssetManager() {
+  private String createTag(String type, Map<String, String> attrs,
+    Locale locale) {
 
+    if (StringUtils.equals(type, SCRIPTS)) {
+      return createScriptTag(attrs, locale);
+    }
+    else if (StringUtils.equals(type, METAS)) {
+      return createMetaTag(attrs, locale);
+    }
+    return createLinkTag(attrs, locale);
   }
 
-  public ReloadableAssetManager(String rootDir, Resource[] resources) {
+  private static String normalizeUrl(String url) {
 
-    // set the root directory and resources
-    this.rootDir = rootDir;
-    setResources(resources);
+    // http and https urls are the same as protocol relative ones, hosts are
+    // case insensitive, and dot segments are removed from the path
+    String normalized = StringUtils.trim(url);
+    String lower = StringUtils.lowerCase(normalized);
+    if (lower.startsWith("http://") || lower.startsWith("https://")) {
+      normalized = normalized.substring(normalized.indexOf(':') + 1);
+    }
+    if (normalized.startsWith("//")) {
+      int slash = normalized.indexOf('/', 2);
+      if (slash < 0) {
+        slash = normalized.length();
+      }
+      normalized = StringUtils.lowerCase(normalized.substring(0, slash))
+        + normalized.substring(slash);
+    }
+    try {
+      normalized = new URI(normalized).normalize().toString();
+    }
+    catch (URISyntaxException e) {
+      // not a valid uri, compare as is
+    }
+    return normalized;
   }
 
-  public void initialize() {
+  private List<String> getAssetKeys(String type, Map<String, String> attrs,
+    Locale locale) {
 
-    // load all asset config files
-    if (resources != null && resources.length > 0) {
-      loadAllAssetConfigFiles();
+    // assets are the same if they share an id or a normalized src or href,
+    // embedded scripts are identified by their embed path
+    List<String> keys = new ArrayList<String>(2);
+    String id = getMessage(attrs.get("id"), locale);
+    if (StringUtils.isNotBlank(id)) {
+      keys.add(type + "#" + id);
+    }
+    String url = null;
+    if (StringUtils.equals(type, SCRIPTS)) {
+      url = getMessage(attrs.get("src"), locale);
+      if (StringUtils.isBlank(url)) {
+        url = getMessage(attrs.get("embed"), locale);
+      }
     }
+    else if (StringUtils.equals(type, LINKS)) {
+      url = getMessage(attrs.get("href"), locale);
+    }
+    if (StringUtils.isNotBlank(url)) {
+      keys.add(type + ":" + normalizeUrl(url));
+    }
+    return keys;
+  }
 
-    // activate the service
-    active.set(true);
+  private void addOrdered(int index, List<List<Integer>> afterIndexes,
+    boolean[] visited, List<Integer> ordered) {
 
-    // start the reloading thread if we have a reload interval
-    if (reloadInterval > 0) {
-      reloader = new AssetReloaderThread();
-      reloader.setDaemon(true);
-      reloader.start();
+    // assets it comes after first, cycles are broken where they are found
+    if (visited[index]) {
+      return;
     }
+    visited[index] = true;
+    for (Integer afterIndex : afterIndexes.get(index)) {
+      addOrdered(afterIndex, afterIndexes, visited, ordered);
+    }
+    ordered.add(index);
   }
 
-  public void shutdown() {
-    active.set(false);
+  private String getUrl(String type, Map<String, String> attrs, Locale locale) {
+    return getMessage(attrs.get(StringUtils.equals(type, SCRIPTS) ? "src"
+      : "href"), locale);
   }
 
-  @Override
-  public List<String> getScriptsForPath(String path, Locale locale,
-    boolean global) {
+  private boolean isBundleable(String type, Map<String, String> attrs,
+    Locale locale) {
 
-    // check the cache first
-    if (scriptsCache.containsKey(path)) {
-      return scriptsCache.get(path);
+    // local scripts, and local stylesheets without other attributes such as
+    // media, can be bundled, unless they are small enough to inline
+    if (!AssetBundler.isLocalUrl(getUrl(type, attrs, locale))
+      || getInlineSource(type, attrs, locale) != null) {
+      return false;
+    }
+    if (StringUtils.equals(type, SCRIPTS)) {
+
+      // attributes such as integrity or async would be lost in a bundle,
+      // modules import each other and can't be joined
+      for (String attr : attrs.keySet()) {
+        if (!StringUtils.equals(attr, "type")
+          && !StringUtils.equals(attr, "src")
+          && !AssetConfig.isConfigAttr(attr)) {
+          return false;
+        }
+      }
+      String scriptType = attrs.get("type");
+      return !StringUtils.equals(getScriptLoad(type, attrs, locale),
+        AssetConfig.LOAD_MODULE)
+        && (StringUtils.isBlank(scriptType) || StringUtils.equals(scriptType,
+          "text/javascript"));
+    }
+    if (StringUtils.equals(type, LINKS)) {
+      for (String attr : attrs.keySet()) {
+        if (!StringUtils.equals(attr, "rel")
+          && !StringUtils.equals(attr, "type")
+          && !StringUtils.equals(attr, "href")
+          && !AssetConfig.isConfigAttr(attr)) {
+          return false;
+        }
+      }
+      return StringUtils.equalsIgnoreCase(attrs.get("rel"), "stylesheet");
+    }
+    return false;
+  }
+
+  private void bundleAssets(String type, List<Map<String, String>> assets,
+    List<List<String>> assetKeys, Locale locale) {
+
+    // runs of two or more bundleable assets are replaced by a single bundle,
+    // so assets are still written in order, anything that can't be bundled
+    // is written as is, scripts are only bundled with scripts loading the
+    // same way
+    List<Map<String, String>> bundled = new ArrayList<Map<String, String>>();
+    List<List<String>> bundledKeys = new ArrayList<List<String>>();
+    int start = 0;
+    while (start < assets.size()) {
+      int end = start;
+      String load = getScriptLoad(type, assets.get(start), locale);
+      while (end < assets.size()
+        && isBundleable(type, assets.get(end), locale)
+        && StringUtils.equals(getScriptLoad(type, assets.get(end), locale),
+          load)) {
+        end++;
+      }
+      if (end - start >= 2) {
+        List<String> urls = new ArrayList<String>();
+        boolean preload = false;
+        for (int i = start; i < end; i++) {
+          String url = getUrl(type, assets.get(i), locale);
+          urls.add(url);
+          watchSourceDirectory(bundler.getFile(url));
+          preload |= StringUtils.equalsIgnoreCase(assets.get(i).get(
+            AssetConfig.PRELOAD), "true");
+        }
+        String bundleUrl = bundler.bundle(type, urls);
+        if (bundleUrl != null) {
+          Map<String, String> bundleAttrs = new LinkedHashMap<String, String>();
+          if (StringUtils.equals(type, SCRIPTS)) {
+            bundleAttrs.put("type", "text/javascript");
+            bundleAttrs.put("src", bundleUrl);
+          }
+          else {
+            bundleAttrs.put("rel", "stylesheet");
+            bundleAttrs.put("type", "text/css");
+            bundleAttrs.put("href", bundleUrl);
+          }
+          if (preload) {
+            bundleAttrs.put(AssetConfig.PRELOAD, "true");
+          }
+          if (StringUtils.isNotBlank(load)) {
+            bundleAttrs.put(AssetConfig.LOAD, load);
+          }
+
+          // the bundle carries the keys of every file in it, so a file that
+          // is also set dynamically or by another tag isn't written again
+          List<String> bundleKeys = new ArrayList<String>();
+          for (int i = start; i < end; i++) {
+            bundleKeys.addAll(assetKeys.get(i));
+          }
+          bundleKeys.add(type + ":" + bundleUrl);
+          bundled.add(bundleAttrs);
+          bundledKeys.add(bundleKeys);
+          start = end;
+          continue;
+        }
+      }
+      end = Math.max(end, start + 1);
+      for (int i = start; i < end; i++) {
+        bundled.add(assets.get(i));
+        bundledKeys.add(assetKeys.get(i));
+      }
+      start = end;
+    }
+    assets.clear();
+    assets.addAll(bundled);
+    assetKeys.clear();
+    assetKeys.addAll(bundledKeys);
+  }
+
+  private List<Map<String, String>> orderAssets(String type,
+    List<Map<String, String>> attrsList, Locale locale, boolean bundle,
+    List<List<String>> tagKeys) {
+
+    // drop assets already included, the first one wins, and remember where
+    // each asset is by key and file name for ordering
+    List<Map<String, String>> assets = new ArrayList<Map<String, String>>();
+    List<List<String>> assetKeys = new ArrayList<List<String>>();
+    Map<String, Integer> keyIndexes = new HashMap<String, Integer>();
+    Map<String, Integer> fileIndexes = new HashMap<String, Integer>();
+    boolean hasAfter = false;
+    for (Map<String, String> attrs : attrsList) {
+      List<String> keys = getAssetKeys(type, attrs, locale);
+      boolean included = false;
+      for (String key : keys) {
+        included |= keyIndexes.containsKey(key);
+      }
+      if (included) {
+        continue;
+      }
+      Integer index = assets.size();
+      for (String key : keys) {
+        keyIndexes.put(key, index);
+        if (key.startsWith(type + ":")) {
+          String fileName = FilenameUtils.getName(key);
+          if (!fileIndexes.containsKey(fileName)) {
+            fileIndexes.put(fileName, index);
+          }
+        }
+      }
+      assets.add(attrs);
+      assetKeys.add(keys);
+      hasAfter |= StringUtils.isNotBlank(attrs.get(AssetConfig.AFTER));
+    }
+
+    // assets keep their config order unless they must come after another
+    // asset, referenced by id, src or href, or file name
+    List<Integer> ordered = new ArrayList<Integer>(assets.size());
+    if (hasAfter) {
+      List<List<Integer>> afterIndexes = new ArrayList<List<Integer>>();
+      for (Map<String, String> attrs : assets) {
+        List<Integer> indexes = new ArrayList<Integer>();
+        String afters = attrs.get(AssetConfig.AFTER);
+        if (StringUtils.isNotBlank(afters)) {
+          for (String after : StringUtils.split(afters, ',')) {
+            after = StringUtils.trim(after);
+            Integer afterIndex = keyIndexes.get(type + "#" + after);
+            if (afterIndex == null) {
+              afterIndex = keyIndexes.get(type + ":" + normalizeUrl(after));
+            }
+            if (afterIndex == null) {
+              afterIndex = fileIndexes.get(FilenameUtils.getName(after));
+            }
+            if (afterIndex != null) {
+              indexes.add(afterIndex);
+            }
+          }
+        }
+        afterIndexes.add(indexes);
+      }
+      boolean[] visited = new boolean[assets.size()];
+      for (int i = 0; i < assets.size(); i++) {
+        addOrdered(i, afterIndexes, visited, ordered);
+      }
+    }
+    else {
+      for (int i = 0; i < assets.size(); i++) {
+        ordered.add(i);
+      }
     }
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> scriptTags = new ArrayList<String>();
-
-    // get the global and path assets
-    Map globalAssets = (Map)assets.get(GLOBAL);
-    Map pathAssets = (Map)assets.get(path);
+    List<Map<String, String>> orderedAssets = new ArrayList<Map<String, String>>();
+    for (Integer index : ordered) {
+      orderedAssets.add(assets.get(index));
+      tagKeys.add(assetKeys.get(index));
+    }
+    if (bundle && bundler != null && !StringUtils.equals(type, METAS)) {
+      bundleAssets(type, orderedAssets, tagKeys, locale);
+    }
+    return orderedAssets;
+  }
 
-    // add the global scripts
-    if (global && globalAssets != null) {
-      List<Map> globalScripts = (List<Map>)globalAssets.get(SCRIPTS);
-      if (globalScripts != null && globalScripts.size() > 0) {
-        for (Map<String, String> scriptAttrs : globalScripts) {
-          String scriptTag = createScriptTag(scriptAttrs, locale);
-          scriptTags.add(scriptTag);
-        }
+  private AssetFragment mergeAssets(String type,
+    List<Map<String, String>> attrsList, Locale locale, boolean bundle) {
+
+    // scripts and footer scripts are ordered together and then split so
+    // each script is written by one of them
+    String configType = getConfigType(type);
+    boolean footer = StringUtils.equals(type, FOOTER_SCRIPTS);
+    List<List<String>> tagKeys = new ArrayList<List<String>>();
+    List<Map<String, String>> orderedAssets = orderAssets(configType,
+      attrsList, locale, bundle, tagKeys);
+    List<String> tags = new ArrayList<String>(orderedAssets.size());
+    List<List<String>> keys = new ArrayList<List<String>>(orderedAssets
+      .size());
+    for (int i = 0; i < orderedAssets.size(); i++) {
+      Map<String, String> attrs = orderedAssets.get(i);
+      if (isFooterScript(configType, attrs, locale) != footer) {
+        continue;
       }
+      tags.add(createTag(configType, attrs, locale));
+      keys.add(tagKeys.get(i));
     }
+    return tags.isEmpty() ? AssetFragment.EMPTY : new AssetFragment(tags,
+      keys);
+  }
 
-    // add the scripts for the path
-    if (pathAssets != null) {
-      List<Map> pathScripts = (List<Map>)pathAssets.get(SCRIPTS);
-      if (pathScripts != null && pathScripts.size() > 0) {
-        for (Map<String, String> scriptAttrs : pathScripts) {
-          String scriptTag = createScriptTag(scriptAttrs, locale);
-          scriptTags.add(scriptTag);
-        }
+  private void addAttrs(String type, Map typeAssets,
+    List<Map<String, String>> attrsList) {
+
+    if (typeAssets != null) {
+      List<Map<String, String>> typeAttrs = (List<Map<String, String>>)typeAssets
+        .get(type);
+      if (typeAttrs != null) {
+        attrsList.addAll(typeAttrs);
       }
     }
+  }
 
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(scriptTags);
+  private static String getPreloadAs(String type, Map<String, String> attrs,
+    String url) {
 
-    // cache the list for next time and return it
-    if (caching && scriptTags.size() > 0) {
-      scriptsCache.put(path, scriptTags);
+    // what is preloaded decides its priority and which cache it goes in,
+    // unknown types aren't preloaded
+    if (StringUtils.equals(type, SCRIPTS)) {
+      return "script";
     }
-
-    return scriptTags;
+    if (StringUtils.isNotBlank(attrs.get("as"))) {
+      return attrs.get("as");
+    }
+    if (StringUtils.containsIgnoreCase(attrs.get("rel"), "stylesheet")) {
+      return "style";
+    }
+    String extension = StringUtils.lowerCase(FilenameUtils
+      .getExtension(StringUtils.substringBefore(StringUtils.substringBefore(
+        url, "?"), "#")));
+    if (StringUtils.equals(extension, "css")) {
+      return "style";
+    }
+    else if (StringUtils.equals(extension, "js")) {
+      return "script";
+    }
+    else if (StringUtils.equals(extension, "woff2")
+      || StringUtils.equals(extension, "woff")
+      || StringUtils.equals(extension, "ttf")
+      || StringUtils.equals(extension, "otf")) {
+      return "font";
+    }
+    else if (StringUtils.equals(extension, "png")
+      || StringUtils.equals(extension, "jpg")
+      || StringUtils.equals(extension, "jpeg")
+      || StringUtils.equals(extension, "gif")
+      || StringUtils.equals(extension, "webp")
+      || StringUtils.equals(extension, "svg")
+      || StringUtils.equals(extension, "ico")) {
+      return "image";
+    }
+    return null;
   }
 
-  @Override
-  public List<String> getMetaForPath(String path, Locale locale, boolean global) {
+  private boolean isPreloaded(String type, Map<String, String> attrs,
+    Locale locale) {
 
-    // check the cache first
-    if (metaCache.containsKey(path)) {
-      return metaCache.get(path);
+    // stylesheets for every media block rendering so they are preloaded
+    // unless turned off, anything else only when asked for
+    String preload = getMessage(attrs.get(AssetConfig.PRELOAD), locale);
+    if (StringUtils.isNotBlank(preload)) {
+      return StringUtils.equalsIgnoreCase(preload, "true");
     }
+    return StringUtils.equals(type, LINKS)
+      && StringUtils.isBlank(attrs.get("media"))
+      && StringUtils.containsIgnoreCase(attrs.get("rel"), "stylesheet");
+  }
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> metaTags = new ArrayList<String>();
-
-    // get the global and path assets
-    Map globalAssets = (Map)assets.get(GLOBAL);
-    Map pathAssets = (Map)assets.get(path);
+  private static String getHeaderParam(String value) {
 
-    // add the global meta tags
-    if (global && globalAssets != null) {
-      List<Map> globalMetas = (List<Map>)globalAssets.get(METAS);
-      if (globalMetas != null && globalMetas.size() > 0) {
-        for (Map<String, String> metaAttrs : globalMetas) {
-          String metaTag = createMetaTag(metaAttrs, locale);
-          metaTags.add(metaTag);
-        }
-      }
+    // a header parameter is a token or a quoted string, digests hold
+    // characters such as / and = that have to be quoted
+    String param = StringUtils.replaceChars(value, "\"\\\r\n", null);
+    if (param.matches("[A-Za-z0-9!#$%&'*+.^_`|~-]+")) {
+      return param;
     }
+    return "\"" + param + "\"";
+  }
 
-    // add the met tags for the path
-    if (pathAssets != null) {
-      List<Map> pathMetas = (List<Map>)pathAssets.get(METAS);
-      if (pathMetas != null && pathMetas.size() > 0) {
-        for (Map<String, String> metaAttrs : pathMetas) {
-          String metaTag = createMetaTag(metaAttrs, locale);
-          metaTags.add(metaTag);
+  private AssetFragment renderPreloadHeader(Map globalAssets,
+    Map targetAssets, Locale locale) {
+
+    // the urls are the ones written in the tags, bundled and fingerprinted,
+    // stylesheets first as they block rendering
+    List<String> preloads = new ArrayList<String>();
+    for (String type : new String[] {LINKS, SCRIPTS}) {
+      List<Map<String, String>> attrsList = new ArrayList<Map<String, String>>();
+      addAttrs(type, globalAssets, attrsList);
+      addAttrs(type, targetAssets, attrsList);
+      for (Map<String, String> attrs : orderAssets(type, attrsList, locale,
+        true, new ArrayList<List<String>>())) {
+        if (!isPreloaded(type, attrs, locale)
+          || getInlineSource(type, attrs, locale) != null) {
+          continue;
+        }
+        String url = getFileUrl(getUrl(type, attrs, locale));
+        String as = getPreloadAs(type, attrs, url);
+        if (StringUtils.isBlank(url) || as == null
+          || StringUtils.containsAny(url, "<> \t\r\n")) {
+          continue;
+        }
+        String preload = "<" + url + ">; rel=preload; as=" + as;
+
+        // the preload has to be fetched the same way as the tag, with its
+        // crossorigin mode and checked against the same digest, or the
+        // browser won't use it
+        String crossorigin = getMessage(attrs.get("crossorigin"), locale);
+        if (StringUtils.isNotBlank(crossorigin)) {
+          preload += "; crossorigin=" + getHeaderParam(crossorigin);
+        }
+        else if (StringUtils.equals(as, "font")
+          || attrs.containsKey("crossorigin")) {
+          preload += "; crossorigin";
         }
+        String integrityDigest = getMessage(attrs.get("integrity"), locale);
+        if (StringUtils.isBlank(integrityDigest)
+          && (StringUtils.equals(type, SCRIPTS) || isIntegrityRel(getMessage(
+            attrs.get("rel"), locale)))) {
+          integrityDigest = getIntegrity(attrs, getUrl(type, attrs, locale));
+        }
+        if (StringUtils.isNotBlank(integrityDigest)) {
+          preload += "; integrity=" + getHeaderParam(integrityDigest);
+        }
+        preloads.add(preload);
       }
     }
-
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(metaTags);
-
-    // cache the list for next time and return it
-    if (caching && metaTags.size() > 0) {
-      metaCache.put(path, metaTags);
+    if (preloads.isEmpty()) {
+      return AssetFragment.EMPTY;
     }
-
-    return metaTags;
+    return new AssetFragment(Collections.singletonList(StringUtils.join(
+      preloads, ", ")));
   }
 
-  @Override
-  public List<String> getLinksForPath(String path, Locale locale, boolean global) {
+  private AssetFragment renderFragment(String type, Map globalAssets,
+    Map targetAssets, Locale locale) {
 
-    // check the cache first
-    if (linksCache.containsKey(path)) {
-      return linksCache.get(path);
+    if (StringUtils.equals(type, PRELOAD_HEADER)) {
+      return renderPreloadHeader(globalAssets, targetAssets, locale);
     }
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> linkTags = new ArrayList<String>();
+    if (StringUtils.equals(type, TITLE)) {
 
-    // get the global and path assets
-    Map globalAssets = (Map)assets.get(GLOBAL);
-    Map pathAssets = (Map)assets.get(path);
-
-    // add the global links
-    if (global && globalAssets != null) {
-      List<Map> globalLinks = (List<Map>)globalAssets.get(LINKS);
-      if (globalLinks != null && globalLinks.size() > 0) {
-        for (Map<String, String> linkAttrs : globalLinks) {
-          String linkTag = createLinkTag(linkAttrs, locale);
-          linkTags.add(linkTag);
+      // the global title is only a fallback for configured paths
+      String title = null;
+      if (targetAssets != null) {
+        title = (String)targetAssets.get(TITLE);
+        if (globalAssets != null && StringUtils.isBlank(title)) {
+          title = (String)globalAssets.get(TITLE);
         }
       }
+
+      // convert to message if necessary and add the title wrapper
+      if (StringUtils.isNotBlank(title)) {
+        title = getMessage(title, locale);
+      }
+      if (StringUtils.isNotBlank(title)) {
+        return new AssetFragment(Collections.singletonList("<title>" + title
+          + "</title>"));
+      }
+      return AssetFragment.EMPTY;
     }
 
-    // add the links for the path
-    if (pathAssets != null) {
-      List<Map> pathLinks = (List<Map>)pathAssets.get(LINKS);
-      if (pathLinks != null && pathLinks.size() > 0) {
-        for (Map<String, String> linkAttrs : pathLinks) {
-          String linkTag = createLinkTag(linkAttrs, locale);
-          linkTags.add(linkTag);
+    // global assets always come before those of the path, assets in both
+    // are only included once
+    List<Map<String, String>> attrsList = new ArrayList<Map<String, String>>();
+    addAttrs(getConfigType(type), globalAssets, attrsList);
+    addAttrs(getConfigType(type), targetAssets, attrsList);
+    return mergeAssets(type, attrsList, locale, true);
+  }
+
+  private Map mergeNamedAssets(AssetSnapshot current, String[] names) {
+
+    // the first title and every name's assets in the order of the names
+    Map<String, Object> merged = new LinkedHashMap<String, Object>();
+    for (String name : names) {
+      Map namedAssets = (Map)current.getNamedAssets().get(name);
+      if (namedAssets == null) {
+        continue;
+      }
+      if (!merged.containsKey(TITLE) && namedAssets.get(TITLE) != null) {
+        merged.put(TITLE, namedAssets.get(TITLE));
+      }
+      for (String type : new String[] {METAS, LINKS, SCRIPTS}) {
+        List<Map<String, String>> attrsList = (List<Map<String, String>>)merged
+          .get(type);
+        if (attrsList == null) {
+          attrsList = new ArrayList<Map<String, String>>();
+          merged.put(type, attrsList);
         }
+        addAttrs(type, namedAssets, attrsList);
       }
     }
+    return merged;
+  }
 
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(linkTags);
+  private List<Map<String, String>> toAttrsList(String type, List assets) {
 
-    // cache the list for next time and return it
-    if (caching && linkTags.size() > 0) {
-      linksCache.put(path, linkTags);
+    // either a map of attributes or just a string, shorthand strings get the
+    // default attributes of a script or stylesheet link
+    List<Map<String, String>> attrsList = new ArrayList<Map<String, String>>();
+    for (Object asset : assets) {
+      if (asset instanceof Map) {
+        Map<String, String> attrs = (Map<String, String>)asset;
+        if (attrs.size() > 0) {
+          attrsList.add(attrs);
+        }
+      }
+      else if (asset instanceof String && StringUtils.equals(type, SCRIPTS)) {
+        Map<String, String> attrs = new LinkedHashMap<String, String>();
+        attrs.put("type", "text/javascript");
+        attrs.put("src", (String)asset);
+        attrsList.add(attrs);
+      }
+      else if (asset instanceof String && StringUtils.equals(type, LINKS)) {
+        Map<String, String> attrs = new LinkedHashMap<String, String>();
+        attrs.put("rel", "stylesheet");
+        attrs.put("type", "text/css");
+        attrs.put("href", (String)asset);
+        attrsList.add(attrs);
+      }
     }
-
-    return linkTags;
+    return attrsList;
   }
 
-  @Override
-  public String getTitleForPath(String path, Locale locale, boolean global) {
+  private AssetFragment getFragment(AssetCache tagCache,
+    AssetCache.Key cacheKey, Map globalAssets, Map targetAssets) {
 
     // check the cache first
-    if (titleCache.containsKey(path)) {
-      return titleCache.get(path);
+    if (caching) {
+      AssetFragment cached = tagCache.get(cacheKey);
+      if (cached != null) {
+        return cached;
+      }
     }
 
-    // get the global and path assets
-    Map globalAssets = (Map)assets.get(GLOBAL);
-    Map pathAssets = (Map)assets.get(path);
+    // render and cache for next time, empty fragments included
+    AssetFragment fragment = renderFragment(cacheKey.getType(), globalAssets,
+      targetAssets, cacheKey.getLocale());
+    if (caching) {
+      tagCache.put(cacheKey, fragment);
+    }
 
-    String title = null;
-    if (pathAssets != null) {
-      title = (String)pathAssets.get(TITLE);
-      if (global && globalAssets != null && StringUtils.isBlank(title)) {
-        title = (String)globalAssets.get(TITLE);
-      }
+    return fragment;
+  }
+
+  private void compileFragment(AssetCache tagCache, AssetCache.Key cacheKey,
+    Map globalAssets, Map targetAssets) {
+    if (!tagCache.containsKey(cacheKey)) {
+      tagCache.put(cacheKey, renderFragment(cacheKey.getType(), globalAssets,
+        targetAssets, cacheKey.getLocale()));
     }
+  }
 
-    // convert to message if necessary
-    if (StringUtils.isNotBlank(title)) {
-      title = getMessage(title, locale);
+  private void compileFragments(AssetSnapshot target) {
+
+    // pre-rendering only makes sense when fragments are cached
+    if (!caching || locales == null || locales.length == 0) {
+      return;
     }
 
-    // add title wrapper and cache
-    if (StringUtils.isNotBlank(title)) {
-      title = "<title>" + title + "</title>";
-      if (caching) {
-        titleCache.put(path, title);
+    // render anything not already cached for every path, name, and locale,
+    // unchanged assets are still cached so only reloaded ones are rendered
+    AssetCache tagCache = target.getCache();
+    Map globalAssets = (Map)target.getAssets().get(GLOBAL);
+    for (Locale locale : locales) {
+      for (String type : FRAGMENT_TYPES) {
+        for (Entry<String, Map<String, Object>> pathEntry : target.getAssets()
+          .entrySet()) {
+          String path = pathEntry.getKey();
+          Map pathAssets = StringUtils.equals(path, GLOBAL) ? null : pathEntry
+            .getValue();
+          compileFragment(tagCache, new AssetCache.Key(type, path, locale,
+            true, false), globalAssets, pathAssets);
+        }
+        for (Entry<String, Map<String, Object>> nameEntry : target
+          .getNamedAssets().entrySet()) {
+          compileFragment(tagCache, new AssetCache.Key(type, nameEntry
+            .getKey(), locale, false, true), null, nameEntry.getValue());
+        }
       }
     }
+  }
+
+  public ReloadableAssetManager() {
 
-    return title;
   }
 
-  @Override
-  public List<String> getScriptsForName(String name, Locale locale) {
+  public ReloadableAssetManager(String rootDir, Resource[] resources) {
 
-    // check the cache first
-    if (scriptsCache.containsKey(name)) {
-      return scriptsCache.get(name);
-    }
+    // set the root directory and resources
+    this.rootDir = rootDir;
+    setResources(resources);
+  }
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> scriptTags = new ArrayList<String>();
+  public void initialize() {
 
-    // get the global and path assets
-    Map assets = (Map)namedAssets.get(name);
+    // metrics are recorded from the first load on
+    if (metricsEnabled) {
+      metrics = new AssetMetrics();
+      metrics.setListeners(metricsListeners);
+      metrics.setCaches(snapshot.getCache(), snapshot.getRoutes());
+      embedSources.setMetrics(metrics);
+      inlineSources.setMetrics(metrics);
+      if (StringUtils.isNotBlank(metricsObjectName)) {
+        metrics.register(metricsObjectName);
+      }
+    }
 
-    // add the scripts for the path
-    if (assets != null) {
-      List<Map> scripts = (List<Map>)assets.get(SCRIPTS);
-      if (scripts != null) {
-        for (Map<String, String> scriptAttrs : scripts) {
-          String scriptTag = createScriptTag(scriptAttrs, locale);
-          scriptTags.add(scriptTag);
-        }
+    // resolve the resource pattern ourselves so it can be resolved again as
+    // config files are added and deleted
+    if (resourcePattern != null) {
+      try {
+        setResources(getResourcePatternResolver().getResources(
+          resourcePattern));
+        resolvePatternRoot();
+        Map<String, Long> modTimes = new HashMap<String, Long>();
+        snapshotPatternDirectories(patternRoot, modTimes);
+        dirModTimes = modTimes;
+      }
+      catch (IOException e) {
+        LOG.error("Error resolving asset configs: " + resourcePattern, e);
+        patternRoot = null;
       }
     }
 
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(scriptTags);
+    // bundles are written under the root directory as fragments are rendered
+    if (bundling) {
+      bundler = new AssetBundler(rootDir);
+      bundler.setBundleDir(bundleDir);
+      bundler.setMinify(minify);
+    }
 
-    // cache the list for next time and return it
-    if (caching && scriptTags.size() > 0) {
-      scriptsCache.put(name, scriptTags);
+    // local script and link urls are fingerprinted by their content as
+    // fragments are rendered
+    if (fingerprinting) {
+      fingerprinter = new AssetFingerprinter(rootDir);
+      fingerprinter.setStyle(fingerprintStyle);
     }
 
-    return scriptTags;
-  }
+    // local files referenced by tags can be served by the assets filter
+    if (serveAssets) {
+      staticAssets = new StaticAssetStore(rootDir);
+    }
 
-  @Override
-  public List<String> getMetaForName(String name, Locale locale) {
+    // local scripts and stylesheets get an integrity digest of their
+    // content, digests are kept in an index file so a restart only digests
+    // files that changed
+    if (integrity) {
+      integrityIndex = new AssetIntegrityIndex(rootDir);
+      String indexPath = (integrityIndexFile != null) ? integrityIndexFile
+        : rootDir + AssetIntegrityIndex.DEFAULT_INDEX_FILE;
+      if (StringUtils.isNotBlank(indexPath)) {
+        integrityIndex.setIndexFile(new File(indexPath));
+        integrityIndex.load();
+      }
+    }
 
-    // check the cache first
-    if (metaCache.containsKey(name)) {
-      return metaCache.get(name);
+    // load all asset config files and pre-render their fragments, or
+    // restore them from a snapshot saved from the same configs and settings
+    if (caching && StringUtils.isNotBlank(snapshotFile)) {
+      snapshotStore = new AssetSnapshotFile(new File(snapshotFile));
     }
+    if (resources != null && resources.length > 0) {
+      if (snapshotStore == null || !restoreSnapshot()) {
+        loadAllAssetConfigFiles();
+        saveSnapshot();
+      }
+    }
+
+    // reloaded messages render the fragments using them off to the side
+    messageReloader = Executors.newSingleThreadExecutor(new ThreadFactory() {
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> metaTags = new ArrayList<String>();
+      @Override
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "asset-message-reloader");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
 
-    // get the named assets
-    Map assets = (Map)namedAssets.get(name);
+    // activate the service
+    active.set(true);
 
-    // add the met tags for the name
-    if (assets != null) {
-      List<Map> metas = (List<Map>)assets.get(METAS);
-      if (metas != null) {
-        for (Map<String, String> metaAttrs : metas) {
-          String metaTag = createMetaTag(metaAttrs, locale);
-          metaTags.add(metaTag);
+    // watch for changes if we have a reload interval, polling if the file
+    // system doesn't support watching or watching is turned off
+    if (reloadInterval > 0) {
+      if (watchFiles) {
+        try {
+          startWatcher();
+          LOG.info("Watching asset configs for changes");
+          return;
+        }
+        catch (Exception e) {
+          LOG.warn("Unable to watch asset configs, polling for changes", e);
+          watcher = null;
         }
       }
+      reloader = new AssetReloaderThread();
+      reloader.setDaemon(true);
+      reloader.start();
     }
+  }
 
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(metaTags);
-
-    // cache the list for next time and return it
-    if (caching && metaTags.size() > 0) {
-      metaCache.put(name, metaTags);
+  public void shutdown() {
+    active.set(false);
+    if (watcher != null) {
+      watcher.stop();
     }
-
-    return metaTags;
+    if (messageReloader != null) {
+      messageReloader.shutdown();
+    }
+    if (metrics != null) {
+      metrics.unregister();
+    }
+    if (integrityIndex != null) {
+      integrityIndex.save();
+    }
+    saveSnapshot();
   }
 
-  @Override
-  public List<String> getLinksForName(String name, Locale locale) {
+  private void recordFragment(String method, String type, String target,
+    AssetFragment fragment, long start) {
 
-    // check the cache first
-    if (linksCache.containsKey(name)) {
-      return linksCache.get(name);
+    // the preload header isn't a tag on the page
+    metrics.methodTimed(method, type, System.nanoTime() - start);
+    int numTags = fragment.getTags().size();
+    if (numTags > 0 && !StringUtils.equals(type, PRELOAD_HEADER)) {
+      metrics.tagsServed(target, numTags);
     }
+  }
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> linkTags = new ArrayList<String>();
-
-    // get the named assets
-    Map assets = (Map)namedAssets.get(name);
+  private String getTarget(AssetSnapshot current, String path) {
 
-    // add the links for the path
-    if (assets != null) {
-      List<Map> links = (List<Map>)assets.get(LINKS);
-      if (links != null) {
-        for (Map<String, String> linkAttrs : links) {
-          String linkTag = createLinkTag(linkAttrs, locale);
-          linkTags.add(linkTag);
-        }
-      }
+    // the path itself, or the pattern it matches, if it has assets
+    if (StringUtils.equals(path, GLOBAL)) {
+      return GLOBAL;
     }
-
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(linkTags);
-
-    // cache the list for next time and return it
-    if (caching && linkTags.size() > 0) {
-      linksCache.put(name, linkTags);
+    Map<String, Map<String, Object>> assets = current.getAssets();
+    if (assets.get(path) != null) {
+      return path;
     }
+    String target = current.getRoutes().match(path);
+    return (target != null && assets.get(target) != null) ? target : GLOBAL;
+  }
 
-    return linkTags;
+  @Override
+  public AssetFragment getFragmentForPath(String type, String path,
+    Locale locale, boolean global) {
+
+    // exact paths first then the most specific matching pattern, paths
+    // matching a pattern share its fragment and paths without their own
+    // assets all share the global only fragment
+    long start = (metrics != null) ? System.nanoTime() : 0;
+    AssetSnapshot current = snapshot;
+    Map<String, Map<String, Object>> assets = current.getAssets();
+    Map globalAssets = global ? (Map)assets.get(GLOBAL) : null;
+    String target = getTarget(current, path);
+    Map pathAssets = StringUtils.equals(target, GLOBAL) ? null
+      : (Map)assets.get(target);
+
+    AssetCache.Key cacheKey = new AssetCache.Key(type, target, locale, global,
+      false);
+    AssetFragment fragment = getFragment(current.getCache(), cacheKey,
+      globalAssets, pathAssets);
+    if (metrics != null) {
+      recordFragment("getFragmentForPath", type, target, fragment, start);
+    }
+    return fragment;
   }
 
   @Override
-  public String getTitleForName(String name, Locale locale) {
+  public AssetFragment getFragmentForName(String type, String name,
+    Locale locale) {
 
-    // check the cache first
-    if (titleCache.containsKey(name)) {
-      return titleCache.get(name);
+    long start = (metrics != null) ? System.nanoTime() : 0;
+    AssetSnapshot current = snapshot;
+    AssetCache.Key cacheKey = new AssetCache.Key(type, name, locale, false,
+      true);
+    AssetFragment fragment = getFragment(current.getCache(), cacheKey, null,
+      (Map)current.getNamedAssets().get(name));
+    if (metrics != null) {
+      recordFragment("getFragmentForName", type, name, fragment, start);
     }
+    return fragment;
+  }
+
+  @Override
+  public AssetFragment getFragmentForNames(String type, String[] names,
+    Locale locale) {
 
-    // get the global and path assets
-    Map assets = (Map)namedAssets.get(name);
-    String title = null;
-    if (assets != null) {
-      title = (String)assets.get(TITLE);
+    if (names.length == 1) {
+      return getFragmentForName(type, names[0], locale);
     }
 
-    // convert to message if necessary
-    if (StringUtils.isNotBlank(title)) {
-      title = getMessage(title, locale);
-      title = "<title>" + title + "</title>";
+    // merged names are cached under the joined names, the assets of every
+    // name are deduplicated and ordered together
+    long start = (metrics != null) ? System.nanoTime() : 0;
+    AssetSnapshot current = snapshot;
+    AssetCache tagCache = current.getCache();
+    AssetCache.Key cacheKey = new AssetCache.Key(type, StringUtils.join(names,
+      ','), locale, false, true);
+    AssetFragment fragment = caching ? tagCache.get(cacheKey) : null;
+    if (fragment == null) {
+      fragment = renderFragment(type, null, mergeNamedAssets(current, names),
+        locale);
       if (caching) {
-        titleCache.put(name, title);
+        tagCache.put(cacheKey, fragment);
       }
     }
+    if (metrics != null) {
+      recordFragment("getFragmentForNames", type, cacheKey.getTarget(),
+        fragment, start);
+    }
+    return fragment;
+  }
 
-    return title;
+  @Override
+  public List<String> getScriptsForPath(String path, Locale locale,
+    boolean global) {
+    return getFragmentForPath(SCRIPTS, path, locale, global).getTags();
   }
 
   @Override
-  public List<String> getDynamicScripts(List scripts, Locale locale) {
+  public List<String> getMetaForPath(String path, Locale locale, boolean global) {
+    return getFragmentForPath(METAS, path, locale, global).getTags();
+  }
 
-    // create a new list every time for dynamic scripts
-    List<String> scriptTags = new ArrayList<String>();
-
-    // if we have scripts, loop through
-    if (scripts != null && scripts.size() > 0) {
-      for (int i = 0; i < scripts.size(); i++) {
-
-        // either is a map of attributes or is just a string, create the single
-        // script tag from either
-        Object scriptObj = scripts.get(i);
-        if (scriptObj instanceof Map) {
-          Map<String, String> scriptAttrs = (Map<String, String>)scriptObj;
-          if (scriptAttrs != null && scriptAttrs.size() > 0) {
-            String scriptTag = createScriptTag(scriptAttrs, locale);
-            scriptTags.add(scriptTag);
-          }
-        }
-        else if (scriptObj instanceof String) {
+  @Override
+  public List<String> getLinksForPath(String path, Locale locale, boolean global) {
+    return getFragmentForPath(LINKS, path, locale, global).getTags();
+  }
 
-          // set default values for script tag if shorthand string
-          Map<String, String> scriptAttrs = new LinkedHashMap<String, String>();
-          scriptAttrs.put("type", "text/javascript");
-          scriptAttrs.put("src", (String)scriptObj);
-          String scriptTag = createScriptTag(scriptAttrs, locale);
-          scriptTags.add(scriptTag);
-        }
-      }
-    }
+  @Override
+  public String getTitleForPath(String path, Locale locale, boolean global) {
+    return getFragmentForPath(TITLE, path, locale, global).getFirstTag();
+  }
 
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(scriptTags);
+  @Override
+  public List<String> getScriptsForName(String name, Locale locale) {
+    return getFragmentForName(SCRIPTS, name, locale).getTags();
+  }
 
-    return scriptTags;
+  @Override
+  public List<String> getMetaForName(String name, Locale locale) {
+    return getFragmentForName(METAS, name, locale).getTags();
   }
 
   @Override
-  public List<String> getDynamicMetas(List<Map<String, String>> metas,
-    Locale locale) {
+  public List<String> getLinksForName(String name, Locale locale) {
+    return getFragmentForName(LINKS, name, locale).getTags();
+  }
 
-    // not in cache create a new list and populate with the global scripts
-    List<String> metaTags = new ArrayList<String>();
+  @Override
+  public String getTitleForName(String name, Locale locale) {
+    return getFragmentForName(TITLE, name, locale).getFirstTag();
+  }
 
-    // if we have metas, loop through
-    if (metas != null && metas.size() > 0) {
-      for (Map<String, String> metaAttrs : metas) {
-        if (metaAttrs != null && metaAttrs.size() > 0) {
-          String metaTag = createMetaTag(metaAttrs, locale);
-          metaTags.add(metaTag);
-        }
-      }
+  @Override
+  public AssetFragment getDynamicFragment(String type, List assets,
+    Locale locale) {
+
+    // created every time, duplicates are dropped and ordering applied like
+    // configured assets
+    if (assets == null || assets.isEmpty()) {
+      return AssetFragment.EMPTY;
+    }
+    long start = (metrics != null) ? System.nanoTime() : 0;
+    AssetFragment fragment = mergeAssets(type, toAttrsList(getConfigType(type),
+      assets), locale, false);
+    if (metrics != null) {
+      metrics.methodTimed("getDynamicFragment", type, System.nanoTime()
+        - start);
     }
+    return fragment;
+  }
 
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(metaTags);
+  @Override
+  public List<String> getDynamicScripts(List scripts, Locale locale) {
+    return getDynamicFragment(SCRIPTS, scripts, locale).getTags();
+  }
 
-    return metaTags;
+  @Override
+  public List<String> getDynamicMetas(List<Map<String, String>> metas,
+    Locale locale) {
+    return getDynamicFragment(METAS, metas, locale).getTags();
   }
 
   @Override
   public List<String> getDynamicLinks(List links, Locale locale) {
-
-    // create a new list every time for dynamic links
-    List<String> linkTags = new ArrayList<String>();
-
-    // if we have links, loop through
-    if (links != null && links.size() > 0) {
-      for (int i = 0; i < links.size(); i++) {
-
-        // either is a map of attributes or is just a string, create the single
-        // link tag from either
-        Object linkObj = links.get(i);
-        if (linkObj instanceof Map) {
-          Map<String, String> linkAttrs = (Map<String, String>)linkObj;
-          if (linkAttrs != null && linkAttrs.size() > 0) {
-            String linkTag = createScriptTag(linkAttrs, locale);
-            linkTags.add(linkTag);
-          }
-        }
-        else if (linkObj instanceof String) {
-
-          // set default values for link tag if shorthand string
-          Map<String, String> linkAttrs = new LinkedHashMap<String, String>();
-          linkAttrs.put("rel", "stylesheet");
-          linkAttrs.put("type", "text/css");
-          linkAttrs.put("href", (String)linkObj);
-          String linkTag = createLinkTag(linkAttrs, locale);
-          linkTags.add(linkTag);
-        }
-      }
-    }
-
-    // don't allow the list to be modified by caller
-    Collections.unmodifiableList(linkTags);
-
-    return linkTags;
+    return getDynamicFragment(LINKS, links, locale).getTags();
   }
 
   @Override
   public String getDynamicTitle(String title, Locale locale) {
 
     // convert to message if necessary
+    long start = (metrics != null) ? System.nanoTime() : 0;
     if (StringUtils.isNotBlank(title)) {
       title = getMessage(title, locale);
       title = "<title>" + title + "</title>";
     }
+    if (metrics != null) {
+      metrics.methodTimed("getDynamicTitle", TITLE, System.nanoTime() - start);
+    }
 
     return title;
   }
 
   public void setMessageSource(MessageSource messageSource) {
+
+    // listen for reloaded messages when the message source can tell us, the
+    // tables are only used if it tells us about every change, otherwise its
+    // own reloading has to see every lookup
+    if (changeSource != null) {
+      changeSource.removeMessageChangeListener(messageListener);
+    }
     this.messageSource = messageSource;
+    messageTables.clear();
+    changeSource = findChangeSource(messageSource);
+    if (changeSource != null) {
+      changeSource.addMessageChangeListener(messageListener);
+    }
+    messageTablesEnabled = changeSource != null
+      && changeSource.isNotifyingChanges();
   }
 
   public void setCaching(boolean caching) {
     this.caching = caching;
   }
 
+  public void setCacheSize(int cacheSize) {
+    this.cacheSize = cacheSize;
+    this.snapshot = AssetSnapshot.empty(new AssetCache(cacheSize));
+  }
+
+  public AssetCache getTagCache() {
+    return snapshot.getCache();
+  }
+
+  public boolean isCurrentFingerprint(String path, String hash) {
+    return fingerprinter != null && fingerprinter.isCurrent(path, hash);
+  }
+
+  public boolean isFingerprinting() {
+    return fingerprinting;
+  }
+
+  public String getPreloadHeader(String path, Locale locale) {
+
+    // only pages with their own assets, global assets alone would put the
+    // header on every response including images and other files
+    if (StringUtils.equals(getTarget(snapshot, path), GLOBAL)) {
+      return null;
+    }
+    return getFragmentForPath(PRELOAD_HEADER, path, locale, true)
+      .getFirstTag();
+  }
+
+  public AssetMetrics getMetrics() {
+    return metrics;
+  }
+
+  public StaticAssetStore.StaticAsset getStaticAsset(String path) {
+    return (staticAssets != null) ? staticAssets.getAsset(path) : null;
+  }
+
+  public void setLocales(Locale[] locales) {
+    this.locales = locales;
+    tableLocales = (locales != null) ? new HashSet<Locale>(Arrays
+      .asList(locales)) : new HashSet<Locale>();
+  }
+
+  public void setEmbedMapThreshold(long embedMapThreshold) {
+    embedSources.setMapThreshold(embedMapThreshold);
+  }
+
+  public void setInlineThreshold(long inlineThreshold) {
+    this.inlineThreshold = inlineThreshold;
+  }
+
+  public void setScriptLoad(String scriptLoad) {
+    this.scriptLoad = scriptLoad;
+  }
+
   public void setResources(Resource[] resources) {
 
     // make sure global assets file is first
@@ -899,6 +2493,14 @@ public class ReloadableAssetManager
     this.resources = resources;
   }
 
+  public void setResourcePattern(String resourcePattern) {
+    this.resourcePattern = resourcePattern;
+  }
+
+  public void setResourceLoader(ResourceLoader resourceLoader) {
+    this.resourceLoader = resourceLoader;
+  }
+
   public void setRootDir(String rootDir) {
     this.rootDir = rootDir;
   }
@@ -907,4 +2509,64 @@ public class ReloadableAssetManager
     this.reloadInterval = reloadInterval;
   }
 
+  public void setLoadThreads(int loadThreads) {
+    this.loadThreads = loadThreads;
+  }
+
+  public void setWatchFiles(boolean watchFiles) {
+    this.watchFiles = watchFiles;
+  }
+
+  public void setBundling(boolean bundling) {
+    this.bundling = bundling;
+  }
+
+  public void setMinify(boolean minify) {
+    this.minify = minify;
+  }
+
+  public void setBundleDir(String bundleDir) {
+    this.bundleDir = bundleDir;
+  }
+
+  public void setFingerprinting(boolean fingerprinting) {
+    this.fingerprinting = fingerprinting;
+  }
+
+  public void setFingerprintStyle(String fingerprintStyle) {
+    this.fingerprintStyle = fingerprintStyle;
+  }
+
+  public void setServeAssets(boolean serveAssets) {
+    this.serveAssets = serveAssets;
+  }
+
+  public void setIntegrity(boolean integrity) {
+    this.integrity = integrity;
+  }
+
+  public void setIntegrityIndexFile(String integrityIndexFile) {
+    this.integrityIndexFile = integrityIndexFile;
+  }
+
+  public void setSnapshotFile(String snapshotFile) {
+    this.snapshotFile = snapshotFile;
+  }
+
+  public void setMetricsEnabled(boolean metricsEnabled) {
+    this.metricsEnabled = metricsEnabled;
+  }
+
+  public void setMetricsObjectName(String metricsObjectName) {
+    this.metricsObjectName = metricsObjectName;
+  }
+
+  public void setMetricsListeners(List<AssetMetricsListener> metricsListeners) {
+    this.metricsListeners = metricsListeners;
+  }
+
+  public void setWatchDebounce(long watchDebounce) {
+    this.watchDebounce = watchDebounce;
+  }
+
 }
@@ -0,0 +1,156 @@
+package com.igfoo.core.web;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.commons.io.IOUtils;
+
+class StampedFileCache<V> {
+
+  private final Map<String, Entry<V>> entries = new ConcurrentHashMap<String, Entry<V>>();
+
+  // a file's modified time and length when it was read, a change to either
+  // is a change to the file without reading it again
+  static class Stamp {
+
+    private final File file;
+    private final long lastModified;
+    private final long length;
+
+    public Stamp(File file) {
+      this(file, file.lastModified(), file.length());
+    }
+
+    public Stamp(File file, long lastModified, long length) {
+      this.file = file;
+      this.lastModified = lastModified;
+      this.length = length;
+    }
+
+    public File getFile() {
+      return file;
+    }
+
+    public long getLastModified() {
+      return lastModified;
+    }
+
+    public long getLength() {
+      return length;
+    }
+
+    public boolean isModified() {
+      return file.lastModified() != lastModified || file.length() != length;
+    }
+  }
+
+  // a value made from a file, null for a missing file so it isn't checked on
+  // every use, the modified check will pick it up if it appears
+  static class Entry<V>
+    extends Stamp {
+
+    private final V value;
+
+    public Entry(File file, V value, long lastModified, long length) {
+      super(file, lastModified, length);
+      this.value = value;
+    }
+
+    public V getValue() {
+      return value;
+    }
+  }
+
+  static String getKey(File file) {
+    try {
+      return file.getCanonicalPath();
+    }
+    catch (IOException e) {
+      return file.getAbsolutePath();
+    }
+  }
+
+  static byte[] digest(File file, String algorithm)
+    throws IOException {
+
+    // files are streamed through the digest, never read whole
+    InputStream input = new FileInputStream(file);
+    try {
+      MessageDigest digest = MessageDigest.getInstance(algorithm);
+      byte[] buffer = new byte[8192];
+      int read = 0;
+      while ((read = input.read(buffer)) != -1) {
+        digest.update(buffer, 0, read);
+      }
+      return digest.digest();
+    }
+    catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    finally {
+      IOUtils.closeQuietly(input);
+    }
+  }
+
+  protected boolean isModified(Entry<V> entry) {
+    return entry.isModified();
+  }
+
+  public Entry<V> get(File file) {
+    return entries.get(getKey(file));
+  }
+
+  public Entry<V> put(File file, V value, long lastModified, long length) {
+    Entry<V> entry = new Entry<V>(file, value, lastModified, length);
+    entries.put(getKey(file), entry);
+    return entry;
+  }
+
+  public boolean invalidate(String path) {
+    return entries.remove(getKey(new File(path))) != null;
+  }
+
+  public Set<String> checkModified() {
+
+    // drop any changed entries so they are made again on next use
+    Set<String> modified = new LinkedHashSet<String>();
+    for (Map.Entry<String, Entry<V>> entry : entries.entrySet()) {
+      if (isModified(entry.getValue())) {
+        entries.remove(entry.getKey());
+        modified.add(entry.getKey());
+      }
+    }
+    return modified;
+  }
+
+  public boolean hasModified() {
+    for (Entry<V> entry : entries.values()) {
+      if (isModified(entry)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public Set<String> getPaths() {
+    return new LinkedHashSet<String>(entries.keySet());
+  }
+
+  public Map<String, Entry<V>> getEntries() {
+    return Collections.unmodifiableMap(entries);
+  }
+
+  public void clear() {
+    entries.clear();
+  }
+
+}
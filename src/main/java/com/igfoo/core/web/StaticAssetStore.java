@@ -0,0 +1,258 @@
+package com.igfoo.core.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
+import org.apache.commons.lang.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class StaticAssetStore {
+
+  private final static Logger LOG = LoggerFactory
+    .getLogger(StaticAssetStore.class);
+
+  public static final String IDENTITY = "identity";
+  public static final String GZIP = "gzip";
+  public static final String BROTLI = "br";
+
+  public static final long DEFAULT_MAX_COMPRESS_SIZE = 1024 * 1024;
+
+  // text files worth compressing, images and fonts are compressed already
+  private static final Set<String> COMPRESSIBLE = new HashSet<String>(Arrays
+    .asList("js", "mjs", "css", "map", "json", "svg", "html", "htm", "txt",
+      "xml"));
+
+  private final String rootDir;
+  private long maxCompressSize = DEFAULT_MAX_COMPRESS_SIZE;
+
+  // only files referenced by rendered tags are served, so requests can't
+  // reach anything else under the root directory
+  private Set<String> paths = Collections
+    .newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+  private final StampedFileCache<StaticAsset> assets = new StampedFileCache<StaticAsset>() {
+
+    @Override
+    protected boolean isModified(StampedFileCache.Entry<StaticAsset> entry) {
+      return entry.getValue().isModified();
+    }
+  };
+
+  public static class StaticAsset
+    extends StampedFileCache.Stamp {
+
+    private final String hash;
+    private final byte[] gzipped;
+    private final File gzipFile;
+    private final File brotliFile;
+    private final long gzipModified;
+    private final long brotliModified;
+
+    public StaticAsset(File file, long lastModified, long length, String hash,
+      byte[] gzipped, File gzipFile, File brotliFile) {
+      super(file, lastModified, length);
+      this.hash = hash;
+      this.gzipped = gzipped;
+      this.gzipFile = gzipFile;
+      this.brotliFile = brotliFile;
+      this.gzipModified = (gzipFile != null) ? gzipFile.lastModified() : 0;
+      this.brotliModified = (brotliFile != null) ? brotliFile.lastModified()
+        : 0;
+    }
+
+    @Override
+    public boolean isModified() {
+
+      // a changed precompressed file changes the asset too
+      return super.isModified()
+        || (gzipFile != null && gzipFile.lastModified() != gzipModified)
+        || (brotliFile != null && brotliFile.lastModified() != brotliModified);
+    }
+
+    public boolean hasEncoding(String encoding) {
+      if (StringUtils.equals(encoding, GZIP)) {
+        return gzipFile != null || gzipped != null;
+      }
+      else if (StringUtils.equals(encoding, BROTLI)) {
+        return brotliFile != null;
+      }
+      return StringUtils.equals(encoding, IDENTITY);
+    }
+
+    public String getETag(String encoding) {
+
+      // each encoding is a different representation with its own strong tag
+      if (StringUtils.equals(encoding, IDENTITY)) {
+        return "\"" + hash + "\"";
+      }
+      return "\"" + hash + "-" + encoding + "\"";
+    }
+
+    public long getLength(String encoding) {
+      if (StringUtils.equals(encoding, GZIP)) {
+        return (gzipFile != null) ? gzipFile.length() : gzipped.length;
+      }
+      else if (StringUtils.equals(encoding, BROTLI)) {
+        return brotliFile.length();
+      }
+      return getLength();
+    }
+
+    public byte[] getBytes(String encoding) {
+
+      // only gzip variants made in memory are held as bytes
+      if (StringUtils.equals(encoding, GZIP) && gzipFile == null) {
+        return gzipped;
+      }
+      return null;
+    }
+
+    public File getFile(String encoding) {
+      if (StringUtils.equals(encoding, GZIP)) {
+        return gzipFile;
+      }
+      else if (StringUtils.equals(encoding, BROTLI)) {
+        return brotliFile;
+      }
+      return getFile();
+    }
+  }
+
+  public StaticAssetStore(String rootDir) {
+    this.rootDir = rootDir;
+  }
+
+  private static File getPrecompressed(File file, String extension) {
+
+    // precompressed files are only used when they are as new as the file
+    File precompressed = new File(file.getPath() + extension);
+    if (precompressed.isFile()
+      && precompressed.lastModified() >= file.lastModified()) {
+      return precompressed;
+    }
+    return null;
+  }
+
+  private byte[] gzip(File file)
+    throws IOException {
+
+    // compressed once at the best level, kept only if it is smaller
+    byte[] content = FileUtils.readFileToByteArray(file);
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream(
+      content.length / 3 + 64);
+    GZIPOutputStream gzip = new GZIPOutputStream(bytes) {
+      {
+        def.setLevel(Deflater.BEST_COMPRESSION);
+      }
+    };
+    gzip.write(content);
+    gzip.close();
+    return bytes.size() < content.length ? bytes.toByteArray() : null;
+  }
+
+  private StaticAsset loadAsset(File file)
+    throws IOException {
+
+    long lastModified = file.lastModified();
+    long length = file.length();
+    String hash = AssetFingerprinter.digestFile(file);
+
+    // precompressed files next to the file win over compressing in memory,
+    // brotli is only ever served precompressed
+    File gzipFile = getPrecompressed(file, ".gz");
+    File brotliFile = getPrecompressed(file, ".br");
+    byte[] gzipped = null;
+    String extension = StringUtils.lowerCase(FilenameUtils.getExtension(file
+      .getName()));
+    if (gzipFile == null && COMPRESSIBLE.contains(extension)
+      && length <= maxCompressSize) {
+      gzipped = gzip(file);
+    }
+    return new StaticAsset(file, lastModified, length, hash, gzipped,
+      gzipFile, brotliFile);
+  }
+
+  private static String getPath(String url) {
+    return StringUtils.substringBefore(StringUtils.substringBefore(url, "?"),
+      "#");
+  }
+
+  public File getFile(String url) {
+    return new File(rootDir + File.separator + getPath(url));
+  }
+
+  public void addUrl(String url) {
+    paths.add(getPath(url));
+  }
+
+  public StaticAsset getAsset(String path) {
+
+    if (!paths.contains(path)) {
+      return null;
+    }
+
+    // files are read and compressed once and then until they change
+    File file = getFile(path);
+    StampedFileCache.Entry<StaticAsset> entry = assets.get(file);
+    if (entry == null) {
+      if (!file.isFile()) {
+        return null;
+      }
+      try {
+        StaticAsset asset = loadAsset(file);
+        entry = assets.put(file, asset, asset.getLastModified(), asset
+          .getLength());
+      }
+      catch (IOException e) {
+        LOG.error("Error reading static asset: " + file.getPath(), e);
+        return null;
+      }
+    }
+    return entry.getValue();
+  }
+
+  public boolean invalidate(String path) {
+
+    // a changed precompressed file changes the file it was made from
+    if (path.endsWith(".gz") || path.endsWith(".br")) {
+      assets.invalidate(path.substring(0, path.length() - 3));
+    }
+    return assets.invalidate(path);
+  }
+
+  public Set<String> checkModified() {
+    return assets.checkModified();
+  }
+
+  public Set<String> getPaths() {
+    Set<String> filePaths = new LinkedHashSet<String>();
+    for (String path : paths) {
+      filePaths.add(getFile(path).getPath());
+    }
+    return filePaths;
+  }
+
+  public Set<String> getUrls() {
+    return new LinkedHashSet<String>(paths);
+  }
+
+  public void clear() {
+    assets.clear();
+  }
+
+  public void setMaxCompressSize(long maxCompressSize) {
+    this.maxCompressSize = maxCompressSize;
+  }
+
+}
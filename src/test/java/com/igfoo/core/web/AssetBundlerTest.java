@@ -0,0 +1,73 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetBundlerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private AssetBundler bundler;
+  private List<String> urls = Arrays.asList("/js/a.js", "/js/b.js");
+
+  private void writeScript(String name, String content)
+    throws Exception {
+    File file = new File(folder.getRoot(), "js/" + name);
+    long lastModified = file.lastModified();
+    FileUtils.writeStringToFile(file, content, "UTF-8");
+    file.setLastModified(lastModified + 2000);
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+    writeScript("a.js", "var a = 1;");
+    writeScript("b.js", "var b = 2;");
+    bundler = new AssetBundler(folder.getRoot().getPath());
+  }
+
+  @Test
+  public void writesBundlesNamedByContent()
+    throws Exception {
+    String bundleUrl = bundler.bundle(AssetManager.SCRIPTS, urls);
+    String content = "var a=1;;\nvar b=2;;\n";
+    assertEquals("/bundles/" + AssetBundler.getContentHash(content) + ".js",
+      bundleUrl);
+    assertEquals(content, FileUtils.readFileToString(bundler
+      .getFile(bundleUrl), "UTF-8"));
+
+    // no temp files are left beside the bundle
+    assertEquals(1, bundler.getFile(bundleUrl).getParentFile().list().length);
+  }
+
+  @Test
+  public void deletesUnusedBundlesOneReloadLater()
+    throws Exception {
+    String first = bundler.bundle(AssetManager.SCRIPTS, urls);
+    writeScript("a.js", "var a = 10;");
+    assertEquals(1, bundler.checkModified().size());
+    String second = bundler.bundle(AssetManager.SCRIPTS, urls);
+    assertFalse(first.equals(second));
+    assertTrue(bundler.getFile(first).exists());
+
+    writeScript("a.js", "var a = 100;");
+    assertEquals(1, bundler.checkModified().size());
+    String third = bundler.bundle(AssetManager.SCRIPTS, urls);
+    assertFalse(bundler.getFile(first).exists());
+    assertTrue(bundler.getFile(second).exists());
+    assertTrue(bundler.getFile(third).exists());
+  }
+
+}
@@ -0,0 +1,47 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetIntegrityIndexTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void loadsSavedDigestsOfUnchangedFiles()
+    throws Exception {
+
+    File rootDir = folder.getRoot();
+    File indexFile = new File(rootDir, "WEB-INF/asset-integrity.json");
+    File script = new File(rootDir, "js/app.js");
+    File style = new File(rootDir, "css/app.css");
+    FileUtils.writeStringToFile(script, "var a = 1;", "UTF-8");
+    FileUtils.writeStringToFile(style, "body{margin:0}", "UTF-8");
+
+    AssetIntegrityIndex index = new AssetIntegrityIndex(rootDir.getPath());
+    index.setIndexFile(indexFile);
+    String integrity = index.getIntegrity(script);
+    index.getIntegrity(style);
+    index.save();
+    assertTrue(indexFile.isFile());
+
+    // a changed file is left out and digested again on use
+    FileUtils.writeStringToFile(style, "body{margin:1px}", "UTF-8");
+    AssetIntegrityIndex loaded = new AssetIntegrityIndex(rootDir.getPath());
+    loaded.setIndexFile(indexFile);
+    loaded.load();
+    assertEquals(1, loaded.getPaths().size());
+    assertEquals(integrity, loaded.getIntegrity(script));
+    assertEquals(AssetIntegrityIndex.digestFile(style), loaded
+      .getIntegrity(style));
+  }
+
+}
@@ -0,0 +1,59 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class AssetMinifierTest {
+
+  @Test
+  public void removesCommentsAndWhitespace() {
+    assertEquals("var a=1;function f(x){return x+1;}",
+      AssetMinifier.minifyJavaScript("// header\nvar a = 1; /* note */\n"
+        + "function f( x ) {\n  return x + 1;\n}\n"));
+  }
+
+  @Test
+  public void keepsStringLiterals() {
+    assertEquals("var s=\"a  // b /* c */\";var t='it\\'s  here';",
+      AssetMinifier.minifyJavaScript("var s = \"a  // b /* c */\";\n"
+        + "var t = 'it\\'s  here';"));
+  }
+
+  @Test
+  public void keepsTemplateLiterals() {
+    assertEquals("var t=`line one\n  ${a + b} // not a comment`;",
+      AssetMinifier.minifyJavaScript("var t = `line one\n"
+        + "  ${a + b} // not a comment`;"));
+  }
+
+  @Test
+  public void keepsRegexLiterals() {
+    assertEquals("var r=/a\\/b [*]\\//g;var s=x.replace(/ +/,' ');",
+      AssetMinifier.minifyJavaScript("var r = /a\\/b [*]\\//g;\n"
+        + "var s = x.replace(/ +/, ' ');"));
+    assertEquals("var c=/[/]/.test(s);", AssetMinifier
+      .minifyJavaScript("var c = /[/]/.test(s);"));
+  }
+
+  @Test
+  public void keepsSpaceBetweenOperators() {
+    assertEquals("a=b+ +c;d=e- -f;", AssetMinifier
+      .minifyJavaScript("a = b + +c;\nd = e - -f;"));
+  }
+
+  @Test
+  public void usesInvalidScriptsAsIs() {
+    String source = "var s = 'unterminated;";
+    assertEquals(source, AssetMinifier.minifyJavaScript(source));
+  }
+
+  @Test
+  public void minifiesCss() {
+    assertEquals("a:hover,b>i{color:red;content:\"  /* x */  \"}"
+      + ".c :first-child{margin:0 auto}", AssetMinifier
+      .minifyCss("/* header */\na:hover, b > i {\n  color: red;\n"
+        + "  content: \"  /* x */  \";\n}\n.c :first-child { margin: 0 auto; }"));
+  }
+
+}
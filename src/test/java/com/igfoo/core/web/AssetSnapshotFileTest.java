@@ -0,0 +1,131 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class AssetSnapshotFileTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private AssetSnapshotFile snapshotFile;
+  private File source;
+
+  private AssetSnapshotFile.Contents createContents() {
+
+    AssetSnapshotFile.Contents contents = new AssetSnapshotFile.Contents();
+    contents.setInputsHash("inputs");
+    Map<String, String> link = new LinkedHashMap<String, String>();
+    link.put("rel", "stylesheet");
+    link.put("href", "/css/page.css");
+    List<Map<String, String>> links = Collections.singletonList(link);
+    List<Map<String, String>> none = Collections.emptyList();
+    AssetConfig config = new AssetConfig(Arrays.asList("/page.html"), "page",
+      false, "page.title", none, none, links);
+    contents.getConfigFiles().add(new AssetConfigFile("/page-assets.json",
+      false, Collections.<String, String> emptyMap(), Collections
+        .singletonList(config)));
+    contents.getFragments().put(
+      new AssetCache.Key("links", "/page.html", Locale.FRENCH, false, false),
+      new AssetFragment(Arrays.asList("<link rel=\"stylesheet\" />")));
+    contents.getSources().put(source.getPath(),
+      new AssetSnapshotFile.SourceStamp(source));
+    contents.getFingerprints().put("/css/page.css", "3f9a1c27b04e");
+    contents.getServedUrls().add("/css/page.css");
+    contents.getMessages().put(Locale.FRENCH,
+      Collections.singletonMap("page.title", "Titre"));
+    return contents;
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+    source = new File(folder.getRoot(), "css/page.css");
+    FileUtils.writeStringToFile(source, "body{margin:0}", "UTF-8");
+    snapshotFile = new AssetSnapshotFile(new File(folder.getRoot(),
+      "snapshot.bin"));
+  }
+
+  @Test
+  public void readsWhatWasWritten()
+    throws Exception {
+    snapshotFile.write(createContents());
+    AssetSnapshotFile.Contents read = snapshotFile.read("inputs");
+
+    AssetConfig config = read.getConfigFiles().get(0).getConfigs().get(0);
+    assertEquals("/page-assets.json", read.getConfigFiles().get(0).getPath());
+    assertEquals(Arrays.asList("/page.html"), config.getPaths());
+    assertEquals("page.title", config.getTitle());
+    assertEquals("/css/page.css", config.getLinks().get(0).get("href"));
+    AssetFragment fragment = read.getFragments().get(
+      new AssetCache.Key("links", "/page.html", Locale.FRENCH, false, false));
+    assertEquals(Arrays.asList("<link rel=\"stylesheet\" />"), fragment
+      .getTags());
+    assertEquals(source.length(), read.getSources().get(source.getPath())
+      .getLength());
+    assertEquals("3f9a1c27b04e", read.getFingerprints().get("/css/page.css"));
+    assertEquals(Collections.singleton("/css/page.css"), read
+      .getServedUrls());
+    assertEquals("Titre", read.getMessages().get(Locale.FRENCH).get(
+      "page.title"));
+  }
+
+  @Test
+  public void ignoresOtherInputs()
+    throws Exception {
+    snapshotFile.write(createContents());
+    assertNull(snapshotFile.read("other"));
+  }
+
+  @Test
+  public void ignoresDamagedFiles()
+    throws Exception {
+    snapshotFile.write(createContents());
+    File file = snapshotFile.getFile();
+    long length = file.length();
+
+    // a flipped byte in the body fails the checksum
+    RandomAccessFile damaged = new RandomAccessFile(file, "rw");
+    try {
+      damaged.seek(length - 10);
+      int value = damaged.read();
+      damaged.seek(length - 10);
+      damaged.write(value ^ 0xff);
+    }
+    finally {
+      damaged.close();
+    }
+    assertNull(snapshotFile.read("inputs"));
+
+    // a truncated file, and a huge body length, are rejected without
+    // allocating what the header claims
+    snapshotFile.write(createContents());
+    damaged = new RandomAccessFile(file, "rw");
+    try {
+      damaged.setLength(length - 10);
+      assertNull(snapshotFile.read("inputs"));
+      damaged.seek(4 + 4 + 4 + "inputs".length());
+      damaged.writeInt(Integer.MAX_VALUE);
+      assertNull(snapshotFile.read("inputs"));
+    }
+    finally {
+      damaged.close();
+    }
+  }
+
+}
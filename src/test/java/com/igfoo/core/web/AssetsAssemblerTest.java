@@ -0,0 +1,149 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.web.context.support.StaticWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+public class AssetsAssemblerTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ReloadableAssetManager assetManager;
+  private MockHttpServletRequest request;
+
+  private void writeFile(String path, String content)
+    throws Exception {
+    FileUtils.writeStringToFile(new File(folder.getRoot(), path), content,
+      "UTF-8");
+  }
+
+  private void createManager(String config, boolean bundling)
+    throws Exception {
+
+    writeFile("page-assets.json", config);
+    assetManager = new ReloadableAssetManager();
+    assetManager.setRootDir(folder.getRoot().getPath());
+    assetManager.setResources(new Resource[] {new FileSystemResource(
+      new File(folder.getRoot(), "page-assets.json"))});
+    assetManager.setCaching(true);
+    assetManager.setBundling(bundling);
+    assetManager.setReloadInterval(0L);
+    assetManager.initialize();
+
+    // the assembler finds the manager through the request's context
+    StaticWebApplicationContext context = new StaticWebApplicationContext();
+    context.getBeanFactory().registerSingleton(
+      AssetsAssembler.ASSET_MANAGER, assetManager);
+    context.refresh();
+    request = new MockHttpServletRequest("GET", "/page.html");
+    request.setAttribute(DispatcherServlet.WEB_APPLICATION_CONTEXT_ATTRIBUTE,
+      context);
+  }
+
+  private String render(String type)
+    throws Exception {
+    AssetsAssembler assembler = AssetsAssembler.getAssembler(request);
+    assembler.appendAssetsForPath(type, "/page.html", true, true);
+    StringWriter out = new StringWriter();
+    assembler.writeTo(out);
+    return out.toString();
+  }
+
+  private static String scriptTag(String attrs) {
+    return "<script" + attrs + "></script>\n";
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+    writeFile("js/jquery.js", "var jQuery = {};");
+    writeFile("js/app.js", "var app = {};");
+    writeFile("js/plugin.js", "var plugin = {};");
+    writeFile("js/base.js", "var base = {};");
+  }
+
+  @After
+  public void tearDown() {
+    if (assetManager != null) {
+      assetManager.shutdown();
+    }
+  }
+
+  @Test
+  public void skipsDynamicScriptsAlreadyBundled()
+    throws Exception {
+    createManager("{\"paths\": [\"/page.html\"], "
+      + "\"scripts\": [\"/js/jquery.js\", \"/js/app.js\"]}", true);
+    request.setAttribute(Assets.SCRIPTS, Arrays.asList("/js/jquery.js"));
+    String bundleUrl = "/bundles/"
+      + AssetBundler.getContentHash("var jQuery={};;\nvar app={};;\n")
+      + ".js";
+    assertEquals(scriptTag(" type=\"text/javascript\" src=\"" + bundleUrl
+      + "\""), render(AssetManager.SCRIPTS));
+  }
+
+  @Test
+  public void skipsDynamicScriptsAlreadyConfigured()
+    throws Exception {
+
+    // the same url written another way, or another url with the same id,
+    // is the same script
+    createManager("{\"paths\": [\"/page.html\"], \"scripts\": "
+      + "[{\"src\": \"/js/app.js\", \"id\": \"app\"}]}", false);
+    Map<String, String> sameId = new LinkedHashMap<String, String>();
+    sameId.put("src", "/js/plugin.js");
+    sameId.put("id", "app");
+    request.setAttribute(Assets.SCRIPTS, Arrays.asList("/js/./app.js",
+      sameId, "/js/jquery.js", "/js/../js/jquery.js"));
+    assertEquals(scriptTag(" src=\"/js/app.js\" id=\"app\"")
+      + scriptTag(" type=\"text/javascript\" src=\"/js/jquery.js\""),
+      render(AssetManager.SCRIPTS));
+  }
+
+  @Test
+  public void ordersScriptsAfterIdUrlAndFileName()
+    throws Exception {
+    createManager("{\"paths\": [\"/page.html\"], \"scripts\": ["
+      + "{\"src\": \"/js/app.js\", \"after\": \"plugin.js\"}, "
+      + "{\"src\": \"/js/plugin.js\", \"after\": \"/js/jquery.js\"}, "
+      + "{\"src\": \"/js/jquery.js\", \"after\": \"base\"}, "
+      + "{\"src\": \"/js/base.js\", \"id\": \"base\"}]}", false);
+    assertEquals(scriptTag(" src=\"/js/base.js\" id=\"base\"")
+      + scriptTag(" src=\"/js/jquery.js\"")
+      + scriptTag(" src=\"/js/plugin.js\"")
+      + scriptTag(" src=\"/js/app.js\""), render(AssetManager.SCRIPTS));
+  }
+
+  @Test
+  public void breaksOrderingCycles()
+    throws Exception {
+
+    // each script is still written once, the cycle is broken where found
+    createManager("{\"paths\": [\"/page.html\"], \"scripts\": ["
+      + "{\"src\": \"/js/app.js\", \"after\": \"jquery.js\"}, "
+      + "{\"src\": \"/js/jquery.js\", \"after\": \"app.js\"}, "
+      + "\"/js/base.js\"]}", false);
+    assertEquals(scriptTag(" src=\"/js/jquery.js\"")
+      + scriptTag(" src=\"/js/app.js\"")
+      + scriptTag(" type=\"text/javascript\" src=\"/js/base.js\""),
+      render(AssetManager.SCRIPTS));
+  }
+
+}
@@ -0,0 +1,107 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class FileWatcherTest {
+
+  private static final long TIMEOUT = 10000;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private BlockingQueue<Set<File>> changes = new LinkedBlockingQueue<Set<File>>();
+  private FileWatcher watcher;
+
+  private Set<File> waitForChanges(File... files)
+    throws Exception {
+
+    // changes are collected across batches until every file was reported
+    Set<File> changed = new LinkedHashSet<File>();
+    long end = System.currentTimeMillis() + TIMEOUT;
+    while (System.currentTimeMillis() < end) {
+      Set<File> batch = changes.poll(100, TimeUnit.MILLISECONDS);
+      if (batch != null) {
+        changed.addAll(batch);
+      }
+      boolean found = true;
+      for (File file : files) {
+        found &= changed.contains(file);
+      }
+      if (found) {
+        return changed;
+      }
+    }
+    fail("Changes not reported, got: " + changed);
+    return null;
+  }
+
+  @Before
+  public void setUp()
+    throws Exception {
+    watcher = new FileWatcher(new FileChangeListener() {
+
+      @Override
+      public void filesChanged(Set<File> files) {
+        changes.add(files);
+      }
+    }, 200);
+    watcher.watchDirectory(folder.getRoot(), true);
+    watcher.start("file-watcher-test");
+  }
+
+  @After
+  public void tearDown() {
+    watcher.stop();
+  }
+
+  @Test
+  public void watchesNewSubdirectories()
+    throws Exception {
+
+    File dir = folder.newFolder("js");
+    waitForChanges(dir);
+    long end = System.currentTimeMillis() + TIMEOUT;
+    while (!watcher.isWatching(dir) && System.currentTimeMillis() < end) {
+      Thread.sleep(50);
+    }
+    assertTrue(watcher.isWatching(dir));
+
+    File file = new File(dir, "app.js");
+    FileUtils.writeStringToFile(file, "var app = {};", "UTF-8");
+    waitForChanges(file);
+  }
+
+  @Test
+  public void reportsChangesTogether()
+    throws Exception {
+
+    // changes within the debounce period are one batch
+    File first = new File(folder.getRoot(), "a.js");
+    File second = new File(folder.getRoot(), "b.js");
+    FileUtils.writeStringToFile(first, "var a = 1;", "UTF-8");
+    FileUtils.writeStringToFile(second, "var b = 2;", "UTF-8");
+    Set<File> batch = changes.poll(TIMEOUT, TimeUnit.MILLISECONDS);
+    assertNotNull(batch);
+    assertTrue(batch.contains(first));
+    assertTrue(batch.contains(second));
+    assertNull(changes.poll(500, TimeUnit.MILLISECONDS));
+  }
+
+}
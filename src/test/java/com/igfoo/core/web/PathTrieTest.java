@@ -0,0 +1,78 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+public class PathTrieTest {
+
+  private static PathTrie trie(String... patterns) {
+    return new PathTrie(Arrays.asList(patterns), 100);
+  }
+
+  @Test
+  public void matchesAntWildcards() {
+    PathTrie routes = trie("/docs/*.html", "/docs/**", "/img/?.png");
+    assertEquals("/docs/*.html", routes.match("/docs/index.html"));
+    assertEquals("/docs/**", routes.match("/docs/a/b/index.html"));
+    assertEquals("/docs/**", routes.match("/docs"));
+    assertEquals("/img/?.png", routes.match("/img/a.png"));
+    assertNull(routes.match("/img/ab.png"));
+    assertNull(routes.match("/other.html"));
+  }
+
+  @Test
+  public void prefersMostSpecificPattern() {
+
+    // fewer any depth wildcards, then fewer wildcards, then fewer whole
+    // segment wildcards, then more literal characters
+    PathTrie routes = trie("/**", "/users/**", "/users/*", "/users/{id}",
+      "/users/u{id}", "/users/new");
+    assertEquals("/users/new", routes.match("/users/new"));
+    assertEquals("/users/u{id}", routes.match("/users/u42"));
+    assertEquals("/users/*", routes.match("/users/42"));
+    assertEquals("/users/**", routes.match("/users/42/edit"));
+    assertEquals("/**", routes.match("/about"));
+  }
+
+  @Test
+  public void matchesVariablesWithRegex() {
+    PathTrie routes = trie("/orders/{id:\\d+}", "/orders/{name}");
+    assertEquals("/orders/{id:\\d+}", routes.match("/orders/123"));
+    assertEquals("/orders/{name}", routes.match("/orders/latest"));
+  }
+
+  @Test
+  public void matchesNestedBracesInRegex() {
+    PathTrie routes = trie("/codes/{id:\\d{3}}", "/codes/x{id:[a-z]{2}}.html");
+    assertEquals("/codes/{id:\\d{3}}", routes.match("/codes/123"));
+    assertNull(routes.match("/codes/1234"));
+    assertEquals("/codes/x{id:[a-z]{2}}.html", routes
+      .match("/codes/xab.html"));
+    assertNull(routes.match("/codes/xabc.html"));
+  }
+
+  @Test
+  public void ignoresInvalidPatterns() {
+    PathTrie routes = trie("/bad/{id:[a-z}", "/good/{id}");
+    assertEquals(1, routes.getPatterns().size());
+    assertEquals("/good/{id}", routes.match("/good/1"));
+    assertNull(routes.match("/bad/a"));
+  }
+
+  @Test
+  public void cachesMatchesAndMisses() {
+    PathTrie routes = trie("/a/*");
+    routes.match("/a/b");
+    routes.match("/a/b");
+    routes.match("/c");
+    routes.match("/c");
+    assertEquals(2, routes.getMissCount());
+    assertEquals(2, routes.getHitCount());
+    assertEquals(2, routes.size());
+  }
+
+}
@@ -0,0 +1,103 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+
+public class PatternReloadableResourceBundleMessageSourceTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private PatternReloadableResourceBundleMessageSource messageSource;
+
+  private void writeBundle(String name, String content)
+    throws Exception {
+    FileUtils.writeStringToFile(new File(folder.getRoot(), name), content,
+      "ISO-8859-1");
+  }
+
+  private PatternReloadableResourceBundleMessageSource createMessageSource(
+    boolean watchFiles)
+    throws Exception {
+
+    // bundles are loaded from the classpath, as in an application, with the
+    // folder as its root
+    ResourceLoader loader = new DefaultResourceLoader(new URLClassLoader(
+      new URL[] {folder.getRoot().toURI().toURL()}));
+    List<Resource> resources = new ArrayList<Resource>();
+    for (File file : folder.getRoot().listFiles()) {
+      resources.add(loader.getResource(file.getName()));
+    }
+    messageSource = new PatternReloadableResourceBundleMessageSource();
+    messageSource.setResourceLoader(loader);
+    messageSource.setFallbackToSystemLocale(false);
+    messageSource.setWatchFiles(watchFiles);
+    messageSource.setWatchDebounce(50L);
+    messageSource.setResources(resources.toArray(new Resource[resources
+      .size()]));
+    return messageSource;
+  }
+
+  @After
+  public void tearDown() {
+    if (messageSource != null) {
+      messageSource.shutdown();
+    }
+  }
+
+  @Test
+  public void keepsNamesWithoutLocaleChain()
+    throws Exception {
+
+    // id is a language code but there is no user bundle for it to belong to
+    writeBundle("user_id.properties", "user.id=Identifier\n");
+    writeBundle("messages.properties", "title=Default\n");
+    writeBundle("messages_fr.properties", "title=Francais\n");
+    createMessageSource(false);
+    assertEquals("Identifier", messageSource.getMessage("user.id", null,
+      Locale.ENGLISH));
+    assertEquals("Francais", messageSource.getMessage("title", null,
+      Locale.FRENCH));
+    assertEquals("Default", messageSource.getMessage("title", null,
+      Locale.ENGLISH));
+  }
+
+  @Test
+  public void sharesMessagesAcrossRequestLocales()
+    throws Exception {
+    writeBundle("messages.properties", "title=Default\n");
+    writeBundle("messages_fr.properties", "title=Francais\n");
+    createMessageSource(true);
+    assertEquals("Francais", messageSource.getMessage("title", null,
+      new Locale("fr", "BE")));
+    assertEquals("Default", messageSource.getMessage("title", null,
+      new Locale("de", "AT")));
+
+    // a locale file added later is used once it is seen
+    writeBundle("messages_fr_BE.properties", "title=Belge\n");
+    String title = null;
+    for (int i = 0; i < 100 && !"Belge".equals(title); i++) {
+      Thread.sleep(100);
+      title = messageSource.getMessage("title", null, new Locale("fr", "BE"));
+    }
+    assertEquals("Belge", title);
+    assertEquals("Francais", messageSource.getMessage("title", null,
+      Locale.FRENCH));
+  }
+
+}
@@ -0,0 +1,104 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.beans.factory.support.BeanDefinitionBuilder;
+import org.springframework.context.support.GenericApplicationContext;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class ReloadableAssetManagerMessagesTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private File rootDir;
+  private File messagesFile;
+  private GenericApplicationContext context;
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    rootDir = folder.getRoot();
+    File configFile = new File(rootDir, "page-assets.json");
+    FileUtils.writeStringToFile(configFile,
+      "[{\"paths\": [\"/page.html\"], \"title\": \"page.title\"}]", "UTF-8");
+    messagesFile = new File(rootDir, "messages.properties");
+    FileUtils.writeStringToFile(messagesFile, "page.title=First\n",
+      "ISO-8859-1");
+
+    // wired the way a web application would, the context sets itself as the
+    // asset manager's message source after its properties are set
+    context = new GenericApplicationContext();
+    context.registerBeanDefinition("messageSource", BeanDefinitionBuilder
+      .genericBeanDefinition(PatternReloadableResourceBundleMessageSource.class)
+      .addPropertyValue("basenames",
+        new String[] {"file:" + rootDir.getPath() + "/messages"})
+      .addPropertyValue("watchFiles", true)
+      .addPropertyValue("watchDebounce", 50L)
+      .setDestroyMethodName("shutdown").getBeanDefinition());
+    context.registerBeanDefinition("assetManager", BeanDefinitionBuilder
+      .genericBeanDefinition(ReloadableAssetManager.class)
+      .addPropertyValue("rootDir", rootDir.getPath())
+      .addPropertyValue("resources",
+        new Resource[] {new FileSystemResource(configFile)})
+      .addPropertyValue("caching", true)
+      .addPropertyValue("locales", new Locale[] {Locale.ENGLISH})
+      .addPropertyValue("reloadInterval", 0L)
+      .setInitMethodName("initialize").setDestroyMethodName("shutdown")
+      .getBeanDefinition());
+    context.refresh();
+  }
+
+  @After
+  public void tearDown() {
+    context.close();
+  }
+
+  private String getTitle(Locale locale) {
+    AssetManager assetManager = context.getBean(AssetManager.class);
+    return assetManager.getTitleForPath("/page.html", locale, true);
+  }
+
+  private String waitForTitle(Locale locale, String expected)
+    throws InterruptedException {
+    String title = getTitle(locale);
+    for (int i = 0; i < 100 && !expected.equals(title); i++) {
+      Thread.sleep(100);
+      title = getTitle(locale);
+    }
+    return title;
+  }
+
+  @Test
+  public void changedMessagesReachRenderedTags()
+    throws Exception {
+    assertEquals("<title>First</title>", getTitle(Locale.ENGLISH));
+    FileUtils.writeStringToFile(messagesFile, "page.title=Second\n",
+      "ISO-8859-1");
+    assertEquals("<title>Second</title>", waitForTitle(Locale.ENGLISH,
+      "<title>Second</title>"));
+  }
+
+  @Test
+  public void resolvesLocalesWithoutTables()
+    throws Exception {
+
+    // a request locale that isn't configured is resolved from the source
+    FileUtils.writeStringToFile(new File(rootDir, "messages_fr.properties"),
+      "page.title=Premier\n", "ISO-8859-1");
+    assertEquals("<title>Premier</title>", getTitle(Locale.FRENCH));
+    assertEquals("<title>First</title>", getTitle(Locale.ENGLISH));
+  }
+
+}
@@ -0,0 +1,71 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class ReloadableAssetManagerPreloadTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ReloadableAssetManager assetManager;
+  private File styleFile;
+
+  @Before
+  public void setUp()
+    throws Exception {
+
+    File rootDir = folder.getRoot();
+    styleFile = new File(rootDir, "css/page.css");
+    FileUtils.writeStringToFile(styleFile, "body{margin:0}", "UTF-8");
+    FileUtils.writeStringToFile(new File(rootDir, "css/print.css"),
+      "body{color:#000}", "UTF-8");
+    File configFile = new File(rootDir, "page-assets.json");
+    FileUtils.writeStringToFile(configFile, "[{\"paths\": [\"/page.html\"], "
+      + "\"links\": [\"/css/page.css\", {\"rel\": \"stylesheet\", "
+      + "\"href\": \"/css/print.css\", \"media\": \"print\"}, "
+      + "{\"rel\": \"stylesheet\", \"href\": \"//cdn.example.com/a.css\", "
+      + "\"crossorigin\": \"use-credentials\", "
+      + "\"integrity\": \"sha384-ab/c=\"}], "
+      + "\"scripts\": [{\"src\": \"/js/missing.js\", \"preload\": \"true\"}]}]",
+      "UTF-8");
+
+    assetManager = new ReloadableAssetManager();
+    assetManager.setRootDir(rootDir.getPath());
+    assetManager.setResources(new Resource[] {new FileSystemResource(
+      configFile)});
+    assetManager.setCaching(true);
+    assetManager.setIntegrity(true);
+    assetManager.setIntegrityIndexFile("");
+    assetManager.setReloadInterval(0L);
+    assetManager.initialize();
+  }
+
+  @After
+  public void tearDown() {
+    assetManager.shutdown();
+  }
+
+  @Test
+  public void preloadsWithIntegrityAndCrossorigin()
+    throws Exception {
+    String integrity = AssetIntegrityIndex.digestFile(styleFile);
+    assertEquals("</css/page.css>; rel=preload; as=style; integrity=\""
+      + integrity + "\", <//cdn.example.com/a.css>; rel=preload; as=style; "
+      + "crossorigin=use-credentials; integrity=\"sha384-ab/c=\", "
+      + "</js/missing.js>; rel=preload; as=script", assetManager
+      .getPreloadHeader("/page.html", Locale.ENGLISH));
+  }
+
+}
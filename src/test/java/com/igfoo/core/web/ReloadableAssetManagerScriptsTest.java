@@ -0,0 +1,98 @@
+package com.igfoo.core.web;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+
+public class ReloadableAssetManagerScriptsTest {
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  private ReloadableAssetManager assetManager;
+
+  private void createManager(String scripts, String scriptLoad)
+    throws Exception {
+
+    File configFile = new File(folder.getRoot(), "page-assets.json");
+    FileUtils.writeStringToFile(configFile, "{\"paths\": [\"/page.html\"], "
+      + "\"scripts\": [" + scripts + "]}", "UTF-8");
+    assetManager = new ReloadableAssetManager();
+    assetManager.setRootDir(folder.getRoot().getPath());
+    assetManager.setResources(new Resource[] {new FileSystemResource(
+      configFile)});
+    assetManager.setCaching(true);
+    assetManager.setScriptLoad(scriptLoad);
+    assetManager.setReloadInterval(0L);
+    assetManager.initialize();
+  }
+
+  private List<String> getTags(String type) {
+    return assetManager.getFragmentForPath(type, "/page.html",
+      Locale.ENGLISH, true).getTags();
+  }
+
+  @After
+  public void tearDown() {
+    if (assetManager != null) {
+      assetManager.shutdown();
+    }
+  }
+
+  @Test
+  public void writesOtherAttributes()
+    throws Exception {
+
+    // boolean attributes are written without a value, or not at all if false
+    createManager("{\"src\": \"/js/app.js\", \"crossorigin\": \"anonymous\", "
+      + "\"data-page\": \"home\", \"nomodule\": \"true\", "
+      + "\"defer\": \"false\"}", null);
+    assertEquals(Arrays.asList("<script src=\"/js/app.js\" "
+      + "crossorigin=\"anonymous\" data-page=\"home\" nomodule></script>"),
+      getTags(AssetManager.SCRIPTS));
+  }
+
+  @Test
+  public void writesEachLoad()
+    throws Exception {
+    createManager("{\"src\": \"/js/blocking.js\", \"load\": \"blocking\"}, "
+      + "{\"src\": \"/js/async.js\", \"load\": \"async\"}, "
+      + "{\"src\": \"/js/defer.js\", \"load\": \"defer\"}, "
+      + "{\"src\": \"/js/module.js\", \"load\": \"module\"}, "
+      + "{\"src\": \"/js/footer.js\", \"load\": \"footer\"}", null);
+    assertEquals(Arrays.asList("<script src=\"/js/blocking.js\"></script>",
+      "<script src=\"/js/async.js\" async></script>",
+      "<script src=\"/js/defer.js\" defer></script>",
+      "<script type=\"module\" src=\"/js/module.js\"></script>"),
+      getTags(AssetManager.SCRIPTS));
+    assertEquals(Arrays.asList("<script src=\"/js/footer.js\"></script>"),
+      getTags(AssetManager.FOOTER_SCRIPTS));
+  }
+
+  @Test
+  public void writesFooterScriptsOnce()
+    throws Exception {
+
+    // the default load applies to scripts without their own
+    createManager("\"/js/app.js\", "
+      + "{\"src\": \"/js/jquery.js\", \"load\": \"blocking\"}",
+      AssetConfig.LOAD_FOOTER);
+    assertEquals(Arrays.asList("<script src=\"/js/jquery.js\"></script>"),
+      getTags(AssetManager.SCRIPTS));
+    assertEquals(
+      Arrays.asList("<script type=\"text/javascript\" src=\"/js/app.js\">"
+        + "</script>"), getTags(AssetManager.FOOTER_SCRIPTS));
+  }
+
+}